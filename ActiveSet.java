@@ -0,0 +1,137 @@
+/* This file keeps the fireworks that are in the air, sorted by phase into a
+   launching bucket, a bursting bucket, and a dead bucket. Stepping the set
+   moves each firework and, when its phase changes, moves it to the next
+   bucket by swapping it with the last firework of its bucket, so no bucket is
+   ever searched or shifted. The number of live fireworks is the size of the
+   first two buckets, so a frame loop can tell in constant time whether a
+   group has finished, and drawing walks the buckets directly instead of
+   looking each firework up in a symbol table. */
+
+import java.util.ArrayList;
+
+public class ActiveSet {
+    private final ArrayList<Firework> launching = new ArrayList<Firework>(); // rising
+    private final ArrayList<Firework> bursting = new ArrayList<Firework>(); // visible
+    private final ArrayList<Firework> dead = new ArrayList<Firework>(); // faded
+    // bursts spawned by stages during a step, added once the step is done
+    private final ArrayList<Firework> spawned = new ArrayList<Firework>();
+
+    // Creates an empty set
+    public ActiveSet() {
+    }
+
+    // Creates a set holding every firework in the symbol table
+    public ActiveSet(ST<Integer, Firework> group) {
+        for (int i = 0; i < group.size(); i++) add(group.get(i));
+    }
+
+    // Adds a firework to the bucket of its phase
+    public void add(Firework fw) {
+        if (fw.isLaunching()) launching.add(fw);
+        else if (fw.isBursting()) bursting.add(fw);
+        else dead.add(fw);
+    }
+
+    // Removes the firework at index i of the bucket by moving the last
+    // firework of the bucket into its place, and returns it
+    private static Firework swapRemove(ArrayList<Firework> bucket, int i) {
+        Firework fw = bucket.get(i);
+        Firework last = bucket.remove(bucket.size() - 1);
+        if (i < bucket.size()) bucket.set(i, last);
+        return fw;
+    }
+
+    // Moves every live firework by one time step and moves the ones whose
+    // phase changed to their new bucket. Stages that break in this step add
+    // their bursts to the bursting bucket. Returns the number of fireworks
+    // that burst, counting each stage that broke as one.
+    public int step() {
+        int bursts = 0;
+        // bursting first, so a firework that bursts below is not also faded
+        for (int i = 0; i < bursting.size(); ) {
+            Firework fw = bursting.get(i);
+            fw.step();
+            bursts += fw.spawn(spawned);
+            if (fw.isDone()) dead.add(swapRemove(bursting, i)); // check the new one at i
+            else i++;
+        }
+        // spawned bursts start moving in the next step
+        bursting.addAll(spawned);
+        spawned.clear();
+
+        for (int i = 0; i < launching.size(); ) {
+            if (launching.get(i).step()) {
+                bursting.add(swapRemove(launching, i));
+                bursts++;
+            }
+            else i++;
+        }
+        return bursts;
+    }
+
+    // Draws every live firework with the renderer
+    public void draw(Renderer renderer) {
+        for (int i = 0; i < launching.size(); i++) launching.get(i).draw(renderer);
+        for (int i = 0; i < bursting.size(); i++) bursting.get(i).draw(renderer);
+    }
+
+    // Hands the particles of every dead firework back to the pool and forgets
+    // the dead fireworks
+    public void releaseDead() {
+        for (int i = 0; i < dead.size(); i++) dead.get(i).release();
+        dead.clear();
+    }
+
+    // Returns the number of live fireworks
+    public int size() {
+        return launching.size() + bursting.size();
+    }
+
+    // Returns true if no firework is still launching or bursting
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Returns the number of fireworks that have not burst yet
+    public int launching() {
+        return launching.size();
+    }
+
+    // Returns the number of fireworks that have burst and are still visible
+    public int bursting() {
+        return bursting.size();
+    }
+
+    // Returns the number of dead fireworks not yet released
+    public int dead() {
+        return dead.size();
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        FireworkRandom random = new FireworkRandom(126);
+        ActiveSet set = new ActiveSet();
+        for (int i = 0; i < 100; i++) {
+            set.add(new Firework(50, -10 + i * 0.2, -10, 0.0, 0.69, 0, -0.014, 0.1,
+                                 1.0F, 0.1F, 0.0F, random));
+        }
+        StdOut.println("Launching: " + set.launching()); // should print 100
+
+        // step until every firework has burst and faded
+        int bursts = 0;
+        int steps = 0;
+        while (!set.isEmpty()) {
+            bursts += set.step();
+            steps++;
+            if (steps == 60)
+                StdOut.println("After 60 steps: " + set.launching() + " launching, "
+                                       + set.bursting() + " bursting");
+        }
+        StdOut.println("Bursts: " + bursts); // should print 100
+        StdOut.println("Dead: " + set.dead()); // should print 100
+        StdOut.println("Steps: " + steps);
+
+        set.releaseDead();
+        StdOut.println("Dead after release: " + set.dead()); // should print 0
+    }
+}
@@ -0,0 +1,248 @@
+/* This file loads every picture and sound the program will use while the
+   start screen is showing, so no screen and no show has to wait for a file
+   to be decoded the first time it appears. It is given the menu pictures,
+   the sound effects, and the show scripts; each script is opened (and so
+   checked or compiled) to find its song and background, and those are loaded
+   too. Every file is loaded once, on a small pool of threads, so pictures
+   and sounds are decoded in parallel:
+
+     pictures   decoded and scaled to the canvas in the BackgroundCache
+     sounds     effects decoded in the SoundBank and the audio line opened
+     songs      read whole by the SongPlayer, in their own format, so they
+                play from memory
+
+   Loading also measures how long the program takes to start: the time from
+   the start of the JVM to the first frame shown (the start screen), the time
+   until every asset is loaded, how long loading took and how much decoding
+   time the threads spent on it together, and how long the last show took
+   from the start of ShowEngine.play to its song and first fireworks
+   starting. report() prints them. */
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AssetManager {
+    // threads that decode files: at least two, so reading one file from disk
+    // overlaps decoding another even on a single core
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    // time the JVM started, in milliseconds since the epoch
+    private static final long JVM_START = jvmStart();
+
+    // names of files already asked for, so each is loaded once
+    private static final Set<String> asked = ConcurrentHashMap.newKeySet();
+    // one party for every file still loading, plus one while start() runs;
+    // it advances each time they have all arrived, and never terminates
+    private static final Phaser loading = new Phaser() {
+        protected boolean onAdvance(int phase, int parties) {
+            finish();
+            return false;
+        }
+    };
+    private static final AtomicInteger loaded = new AtomicInteger(); // files loaded
+    private static final AtomicInteger failed = new AtomicInteger(); // files missing or bad
+    private static final AtomicLong decodeNanos = new AtomicLong(); // time spent loading
+
+    private static ExecutorService pool; // threads that load, made by start()
+    private static int width, height; // size pictures are scaled to
+    private static long startNanos; // when start() was called
+    private static long doneNanos; // when the last file was loaded, or 0
+    private static long firstFrameMillis = -1; // JVM start to first frame shown
+    private static long startupMillis = -1; // JVM start to every file loaded
+    private static long showStartMillis = -1; // time the last show took to start
+
+    // Returns the time the JVM started, or now if it cannot be read
+    private static long jvmStart() {
+        try {
+            return ManagementFactory.getRuntimeMXBean().getStartTime();
+        }
+        catch (RuntimeException | LinkageError e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    // Starts loading the given files in the background and returns at once.
+    // Names ending in .txt or .show are show scripts, names ending in .wav are
+    // sounds, and every other name is a picture, scaled to width by height
+    // pixels.
+    public static synchronized void start(int width, int height, String... names) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Picture size must be positive");
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(THREADS, task -> {
+                Thread thread = new Thread(task, "asset loader");
+                thread.setDaemon(true); // never keeps the program alive
+                return thread;
+            });
+            startNanos = System.nanoTime();
+        }
+        AssetManager.width = width;
+        AssetManager.height = height;
+        loading.register(); // keeps loading from finishing while files are added
+        for (String name : names) load(name, false);
+        loading.arriveAndDeregister();
+    }
+
+    // Starts loading one file, a song if song is true, on the pool, unless it
+    // was asked for already
+    private static void load(String name, boolean song) {
+        if (!asked.add(name)) return;
+        loading.register();
+        pool.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                if (loadFile(name, song)) loaded.incrementAndGet();
+                else failed.incrementAndGet();
+            }
+            catch (RuntimeException e) {
+                failed.incrementAndGet(); // the file is loaded again when it is used
+            }
+            finally {
+                decodeNanos.addAndGet(System.nanoTime() - start);
+                loading.arriveAndDeregister();
+            }
+        });
+    }
+
+    // Loads a song, or a file of the kind its name shows. Returns false if it
+    // could not be loaded.
+    private static boolean loadFile(String name, boolean song) {
+        if (song) return SongPlayer.load(name);
+        if (name.endsWith(".txt") || name.endsWith(".show")) {
+            ShowFile show = ShowFile.open(name);
+            load(show.getBackground(), false);
+            load(show.getSong(), true);
+            return true;
+        }
+        if (name.endsWith(".wav")) {
+            if (SoundBank.get(name) == null) return false;
+            AudioMixer.preload(name); // also opens the audio line ahead of the first burst
+            return true;
+        }
+        BackgroundCache.image(name, width, height);
+        return true;
+    }
+
+    // Records the time every file asked for so far was loaded
+    private static synchronized void finish() {
+        doneNanos = System.nanoTime();
+        if (startupMillis < 0) startupMillis = System.currentTimeMillis() - JVM_START;
+    }
+
+    // Waits until every file is loaded. Returns false if that took longer
+    // than the given number of milliseconds, in which case the rest go on
+    // loading and are decoded when used if still not ready.
+    public static boolean await(long timeoutMillis) {
+        int phase = loading.getPhase();
+        if (loading.getRegisteredParties() == 0) return true; // nothing is loading
+        try {
+            loading.awaitAdvanceInterruptibly(phase, timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        }
+        catch (TimeoutException e) {
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Records that a frame was shown. The first call gives the time to the
+    // first frame.
+    public static synchronized void frameShown() {
+        if (firstFrameMillis < 0) firstFrameMillis = System.currentTimeMillis() - JVM_START;
+    }
+
+    // Records how long a show took from the start of ShowEngine.play to its
+    // song and first fireworks starting
+    public static synchronized void showStarted(long nanos) {
+        showStartMillis = nanos / 1000000;
+    }
+
+    // Returns the number of files loaded
+    public static int getLoaded() {
+        return loaded.get();
+    }
+
+    // Returns the number of files that were missing or could not be decoded
+    public static int getFailed() {
+        return failed.get();
+    }
+
+    // Returns the milliseconds from the start of the JVM to the first frame,
+    // or -1 if no frame has been shown
+    public static synchronized long getFirstFrameMillis() {
+        return firstFrameMillis;
+    }
+
+    // Returns the milliseconds from the start of the JVM until every file was
+    // loaded, or -1 if loading has not finished
+    public static synchronized long getStartupMillis() {
+        return startupMillis;
+    }
+
+    // Returns the milliseconds loading took from start() to the last file,
+    // or -1 if it has not finished
+    public static synchronized long getLoadMillis() {
+        if (doneNanos == 0) return -1;
+        return (doneNanos - startNanos) / 1000000;
+    }
+
+    // Returns the milliseconds the loading threads spent on files together
+    public static long getDecodeMillis() {
+        return decodeNanos.get() / 1000000;
+    }
+
+    // Returns the milliseconds the last show took to start, or -1 if no show
+    // has started
+    public static synchronized long getShowStartMillis() {
+        return showStartMillis;
+    }
+
+    // Prints the startup measurements
+    public static void report() {
+        StdOut.println("Assets: " + getLoaded() + " loaded, " + getFailed() + " failed, in "
+                               + getLoadMillis() + " ms (" + getDecodeMillis()
+                               + " ms of decoding on " + THREADS + " threads)");
+        StdOut.println("Startup: first frame at " + getFirstFrameMillis()
+                               + " ms, assets ready at " + getStartupMillis() + " ms");
+        if (getShowStartMillis() >= 0)
+            StdOut.println("Last show started in " + getShowStartMillis() + " ms");
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        frameShown();
+        start(750, 750, "StartMenu.jpeg", "MainMenu.jpeg", "ShowMenu.jpeg",
+              "LearnMenu.jpeg", "GameMenu.jpeg", "EndScreen.jpeg", "learnSky.jpeg",
+              "explosion.wav", "FourthOfJuly.txt", "EDMdance.txt", "Rainbow.txt");
+        StdOut.println("Loaded in time: " + await(30000)); // should print true
+        report();
+        // 3 scripts, 7 menu pictures, 3 backgrounds, the burst sound, and the
+        // anthem load; the EDM and rainbow songs are not in the repository, so
+        // 15 loaded and 2 failed
+
+        // everything is served from memory now
+        long start = System.nanoTime();
+        BackgroundCache.image("sky.jpeg", 750, 750);
+        BackgroundCache.image("learnSky.jpeg", 750, 750);
+        StdOut.printf("Backgrounds after loading: %.3f ms%n",
+                      (System.nanoTime() - start) / 1e6); // well under a millisecond
+        StdOut.println("Song in memory: " + SongPlayer.isLoaded("NationalAnthem.wav"));
+        // should print true
+
+        // asking again loads nothing twice
+        start(750, 750, "sky.jpeg", "FourthOfJuly.txt");
+        await(30000);
+        StdOut.println("Loaded after asking again: " + getLoaded()); // should print 15
+    }
+}
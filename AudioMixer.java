@@ -0,0 +1,187 @@
+/* This file plays short sound effects, such as the bang of a burst, without
+   making the frame loop wait. Sounds come from the SoundBank already decoded,
+   and playing one only puts its samples on a lock-free queue. A dedicated
+   audio thread takes them off the queue, adds together up to VOICES sounds at
+   once into small blocks of samples, and writes the blocks to the sound card,
+   so five fireworks bursting in the same frame cost the frame loop five queue
+   insertions. When every voice is busy, the sound that has played longest is
+   cut off for the new one.
+
+   The mixer has its own output line, so effects play on top of a show's song,
+   which is still streamed with StdAudio. If there is no sound card, play
+   returns false and the caller can fall back to StdAudio. */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+public class AudioMixer {
+    // most sounds played at the same time
+    public static final int VOICES = 16;
+    // samples mixed at a time, about 12 milliseconds of sound
+    private static final int BLOCK = 512;
+    // blocks of sound the output line holds ahead of the speaker
+    private static final int LINE_BLOCKS = 4;
+
+    private static AudioMixer shared; // mixer used by play, started on first use
+    private static boolean unavailable; // true if the output line could not open
+
+    private final ConcurrentLinkedQueue<short[]> triggers =
+            new ConcurrentLinkedQueue<short[]>(); // sounds waiting to start
+    private final short[][] voices; // samples of the sound in each voice
+    private final int[] positions; // next sample of each voice
+    private final int[] sum = new int[BLOCK]; // the block being mixed
+    private final byte[] block = new byte[2 * BLOCK]; // the block as 16-bit PCM
+    private final SourceDataLine line; // where blocks are written, or null
+
+    // Creates a mixer with the given number of voices writing to the line,
+    // or mixing into nothing if line is null
+    private AudioMixer(int voices, SourceDataLine line) {
+        this.voices = new short[voices][];
+        this.positions = new int[voices];
+        this.line = line;
+    }
+
+    // Returns the shared mixer, opening the output line and starting the audio
+    // thread the first time. Returns null if there is no sound card.
+    private static synchronized AudioMixer shared() {
+        if (shared != null || unavailable) return shared;
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(SoundBank.FORMAT);
+            line.open(SoundBank.FORMAT, 2 * BLOCK * LINE_BLOCKS);
+            line.start();
+            shared = new AudioMixer(VOICES, line);
+        }
+        catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            unavailable = true;
+            return null;
+        }
+        Thread thread = new Thread(shared::run, "audio mixer");
+        thread.setDaemon(true); // never keeps the program alive
+        thread.setPriority(Thread.MAX_PRIORITY); // an empty line is heard as a click
+        thread.start();
+        return shared;
+    }
+
+    // Decodes a sound and opens the output line ahead of time, so the first
+    // time the sound plays is as quick as every other time
+    public static void preload(String sound) {
+        SoundBank.get(sound);
+        shared();
+    }
+
+    // Starts playing a sound effect without waiting. Returns false if the
+    // sound is too long to keep in memory or there is no sound card, in which
+    // case nothing is played.
+    public static boolean play(String sound) {
+        short[] samples = SoundBank.get(sound);
+        if (samples == null) return false;
+        AudioMixer mixer = shared();
+        if (mixer == null) return false;
+        mixer.trigger(samples);
+        return true;
+    }
+
+    // Queues samples to start playing in the next block
+    private void trigger(short[] samples) {
+        triggers.offer(samples);
+    }
+
+    // Mixes and writes blocks for as long as the program runs. Writing blocks
+    // until the line's buffer is full paces the thread to the speaker.
+    private void run() {
+        while (true) {
+            mixBlock();
+            line.write(block, 0, block.length);
+        }
+    }
+
+    // Starts the sounds that were queued, then adds together the next BLOCK
+    // samples of every voice into block
+    private void mixBlock() {
+        for (short[] samples = triggers.poll(); samples != null; samples = triggers.poll())
+            start(samples);
+
+        Arrays.fill(sum, 0);
+        for (int v = 0; v < voices.length; v++) {
+            short[] samples = voices[v];
+            if (samples == null) continue;
+            int position = positions[v];
+            int n = Math.min(BLOCK, samples.length - position);
+            for (int i = 0; i < n; i++) sum[i] += samples[position + i];
+            positions[v] = position + n;
+            if (positions[v] >= samples.length) voices[v] = null; // voice is free
+        }
+
+        // clip to 16 bits and write little-endian
+        for (int i = 0; i < BLOCK; i++) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[i]));
+            block[2 * i] = (byte) sample;
+            block[2 * i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    // Puts a sound in a free voice, or in place of the one that has played
+    // longest if every voice is busy
+    private void start(short[] samples) {
+        int chosen = 0;
+        for (int v = 0; v < voices.length; v++) {
+            if (voices[v] == null) {
+                chosen = v;
+                break;
+            }
+            if (positions[v] > positions[chosen]) chosen = v;
+        }
+        voices[chosen] = samples;
+        positions[chosen] = 0;
+    }
+
+    // Returns the number of voices playing a sound
+    private int busyVoices() {
+        int busy = 0;
+        for (int v = 0; v < voices.length; v++) {
+            if (voices[v] != null) busy++;
+        }
+        return busy;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        short[] explosion = SoundBank.get("explosion.wav");
+
+        // mix offline: five bursts in one frame take five voices
+        AudioMixer mixer = new AudioMixer(VOICES, null);
+        for (int i = 0; i < 5; i++) mixer.trigger(explosion);
+        mixer.mixBlock();
+        StdOut.println("Busy voices: " + mixer.busyVoices()); // should print 5
+        StdOut.println("Sum is five bursts: "
+                               + (mixer.sum[BLOCK - 1] == 5 * explosion[BLOCK - 1])); // true
+
+        // more sounds than voices replace the oldest instead of waiting
+        for (int i = 0; i < 2 * VOICES; i++) mixer.trigger(explosion);
+        mixer.mixBlock();
+        StdOut.println("Busy voices: " + mixer.busyVoices()); // should print 16
+
+        // every voice frees itself once its sound has played
+        for (int i = 0; i <= explosion.length / BLOCK; i++) mixer.mixBlock();
+        StdOut.println("Busy voices: " + mixer.busyVoices()); // should print 0
+
+        // queuing a sound on the shared mixer never waits for the sound card
+        preload("explosion.wav");
+        long start = System.nanoTime();
+        boolean played = true;
+        for (int i = 0; i < 5; i++) played &= play("explosion.wav");
+        double micros = (System.nanoTime() - start) / 1e3;
+        // should print a few microseconds, and true if there is a sound card
+        StdOut.printf("Five bursts queued in %.1f us, by mixer: %b%n", micros, played);
+        StdOut.println("Song by mixer: " + play("NationalAnthem.wav")); // should print false
+        try {
+            Thread.sleep(1500); // let the bursts finish
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
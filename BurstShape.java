@@ -0,0 +1,231 @@
+/* This file describes the shapes a firework can burst into. A shape is a
+   table of burst directions, one per particle, in units of the burst speed:
+   a particle with direction (x, y) starts off with velocity (x, y) times the
+   speed. The shapes are
+
+     ring         one even circle of particles
+     sphere       a ball of particles seen from the side: points spread
+                  evenly over a sphere and projected onto the sky
+     willow       a slower sphere, so gravity pulls it into drooping arcs
+     palm         eight thick arms, each a streak of particles at many speeds
+     heart        the outline of a heart
+     doublering   two circles, the inner one at just over half the speed
+
+   Computing the directions takes sines, cosines, and square roots, so each
+   table is made once for every shape and number of particles and then kept
+   in a cache shared by every firework; bursting only scales and adds. Tables
+   are shared, so they must never be changed.
+
+   The cache holds at most MAX_CACHED directions. When a new table would pass
+   that, the tables used longest ago are dropped, and a table larger than
+   the whole cache is made every time it is asked for and never kept, so a
+   show with many different particle counts runs with bounded memory. */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BurstShape {
+    // shapes, in the order of NAMES
+    public static final int RING = 0;
+    public static final int SPHERE = 1;
+    public static final int WILLOW = 2;
+    public static final int PALM = 3;
+    public static final int HEART = 4;
+    public static final int DOUBLE_RING = 5;
+    // names of the shapes as written in show scripts
+    private static final String[] NAMES = {
+            "ring", "sphere", "willow", "palm", "heart", "doublering"
+    };
+
+    // number of arms of a palm
+    private static final int PALM_ARMS = 8;
+    // angle between one point on a sphere and the next, the golden angle
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+    // most directions kept in the cache, 16 MB of tables
+    public static final int MAX_CACHED = 1 << 20;
+
+    // direction tables already made, by shape and number of particles, from
+    // the one used longest ago to the latest
+    private static final LinkedHashMap<Long, BurstShape> cache =
+            new LinkedHashMap<Long, BurstShape>(16, 0.75f, true);
+    private static long cached; // directions in the cached tables
+
+    private final double[] x, y; // direction of each particle
+
+    // Creates an empty table for the given number of particles
+    private BurstShape(int n) {
+        x = new double[n];
+        y = new double[n];
+    }
+
+    // Returns the direction table of a shape with n particles, making it if
+    // it is not in the cache
+    public static BurstShape of(int shape, int n) {
+        if (shape < 0 || shape >= NAMES.length)
+            throw new IllegalArgumentException("Unknown burst shape " + shape);
+        if (n < 0) throw new IllegalArgumentException("Number of particles must be non-negative");
+        Long key = ((long) shape << 32) | n;
+        synchronized (BurstShape.class) {
+            BurstShape table = cache.get(key); // also marks it as the latest used
+            if (table != null) return table;
+        }
+        BurstShape table = make(shape, n); // made outside the lock
+        if (n > MAX_CACHED) return table; // too large to keep
+
+        synchronized (BurstShape.class) {
+            // another thread may have made the same table meanwhile; keep one
+            BurstShape made = cache.putIfAbsent(key, table);
+            if (made != null) return made;
+            cached += n;
+            // drop the tables used longest ago until the rest fit; the table
+            // just made is the latest and fits on its own, so it is kept
+            Iterator<Map.Entry<Long, BurstShape>> oldest = cache.entrySet().iterator();
+            while (cached > MAX_CACHED) {
+                cached -= oldest.next().getValue().size();
+                oldest.remove();
+            }
+            return table;
+        }
+    }
+
+    // Returns the number of directions kept in the cache
+    public static synchronized long cached() {
+        return cached;
+    }
+
+    // Returns the shape with the given name, or -1 if there is none
+    public static int parse(String name) {
+        for (int shape = 0; shape < NAMES.length; shape++)
+            if (NAMES[shape].equals(name)) return shape;
+        return -1;
+    }
+
+    // Returns the name of a shape
+    public static String name(int shape) {
+        return NAMES[shape];
+    }
+
+    // Returns the number of shapes
+    public static int count() {
+        return NAMES.length;
+    }
+
+    // Makes the direction table of a shape with n particles
+    private static BurstShape make(int shape, int n) {
+        BurstShape table = new BurstShape(n);
+        if (shape == RING) table.ring(0, n, 1.0, 0.0);
+        else if (shape == SPHERE) table.sphere(1.0);
+        else if (shape == WILLOW) table.sphere(0.6);
+        else if (shape == PALM) table.palm();
+        else if (shape == HEART) table.heart();
+        else {
+            // outer ring with the larger half, inner ring offset by half a step
+            int outer = (n + 1) / 2;
+            table.ring(0, outer, 1.0, 0.0);
+            table.ring(outer, n, 0.55, 0.5);
+        }
+        return table;
+    }
+
+    // Spreads particles lo to hi - 1 evenly around a circle of the given
+    // radius, starting the given fraction of a step past angle 0
+    private void ring(int lo, int hi, double radius, double offset) {
+        double step = 2 * Math.PI / (hi - lo);
+        for (int i = lo; i < hi; i++) {
+            double angle = (i - lo + offset) * step;
+            x[i] = radius * Math.cos(angle);
+            y[i] = radius * Math.sin(angle);
+        }
+    }
+
+    // Spreads the particles evenly over a sphere of the given radius along a
+    // spiral from pole to pole and keeps the two coordinates facing the sky
+    private void sphere(double radius) {
+        int n = x.length;
+        for (int i = 0; i < n; i++) {
+            double z = 1 - (2 * i + 1.0) / n; // height on the sphere, -1 to 1
+            double across = Math.sqrt(1 - z * z); // distance from the axis
+            double angle = i * GOLDEN_ANGLE;
+            x[i] = radius * across * Math.cos(angle);
+            y[i] = radius * across * Math.sin(angle);
+        }
+    }
+
+    // Splits the particles over the arms of a palm, each arm a streak from
+    // 0.4 to 1.0 of the burst speed
+    private void palm() {
+        int n = x.length;
+        for (int i = 0; i < n; i++) {
+            int arm = i % PALM_ARMS;
+            int along = i / PALM_ARMS; // place of the particle on its arm
+            int onArm = (n - arm + PALM_ARMS - 1) / PALM_ARMS; // particles on the arm
+            double speed = onArm == 1 ? 1.0 : 0.4 + 0.6 * along / (onArm - 1);
+            double angle = Math.PI / 2 + 2 * Math.PI * arm / PALM_ARMS;
+            x[i] = speed * Math.cos(angle);
+            y[i] = speed * Math.sin(angle);
+        }
+    }
+
+    // Spreads the particles evenly in angle along the outline of a heart,
+    // scaled to be as wide as a ring
+    private void heart() {
+        int n = x.length;
+        for (int i = 0; i < n; i++) {
+            double t = 2 * Math.PI * i / n;
+            double sin = Math.sin(t);
+            x[i] = 16 * sin * sin * sin / 17;
+            y[i] = (13 * Math.cos(t) - 5 * Math.cos(2 * t) - 2 * Math.cos(3 * t)
+                    - Math.cos(4 * t)) / 17;
+        }
+    }
+
+    // Returns the number of particles in the table
+    public int size() {
+        return x.length;
+    }
+
+    // Returns the x-direction of particle i
+    public double getX(int i) {
+        return x[i];
+    }
+
+    // Returns the y-direction of particle i
+    public double getY(int i) {
+        return y[i];
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // a ring of 4 points at right angles
+        BurstShape ring = of(RING, 4);
+        StdOut.printf("Ring: (%.2f, %.2f) (%.2f, %.2f)%n", ring.getX(0), ring.getY(0),
+                      ring.getX(1), ring.getY(1)); // should print (1.00, 0.00) (0.00, 1.00)
+
+        // tables are made once and shared
+        StdOut.println("Cached: " + (of(HEART, 500) == of(HEART, 500))); // should print true
+
+        // the cache stays within its limit however many counts are asked for,
+        // dropping the tables used longest ago
+        BurstShape heart = of(HEART, 500);
+        for (int n = 1000; n <= 200000; n += 1000) of(SPHERE, n);
+        StdOut.println("Directions cached: " + cached() + " of at most " + MAX_CACHED);
+        StdOut.println("Oldest dropped: " + (heart != of(HEART, 500))); // should print true
+        BurstShape huge = of(RING, MAX_CACHED + 1);
+        StdOut.println("Huge table kept: " + (huge == of(RING, MAX_CACHED + 1)));
+        // should print false
+
+        // every shape stays within the speed of a ring
+        for (int shape = 0; shape < count(); shape++) {
+            BurstShape table = of(shape, 1000);
+            double largest = 0.0;
+            for (int i = 0; i < table.size(); i++)
+                largest = Math.max(largest, Math.hypot(table.getX(i), table.getY(i)));
+            StdOut.printf("%-10s largest speed %.3f%n", name(shape), largest);
+            // all at most 1
+        }
+        StdOut.println("Parse: " + parse("palm") + " " + parse("fountain"));
+        // should print 3 -1
+    }
+}
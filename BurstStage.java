@@ -0,0 +1,100 @@
+/* This file describes one stage of a multi-stage firework: a set of small
+   bursts that break out of the particles of an earlier burst. A stage names
+   its parent (0 for the firework's own burst, or the number of an earlier
+   stage counting from 1), how many time steps after the parent bursts it
+   breaks, which of the parent's particles break (every one, every other one,
+   and so on), and the shape, size, and color of each small burst. Since a
+   stage can only follow the burst or an earlier stage, the stages of a
+   firework form a tree, and a firework can never spawn bursts forever. */
+
+public class BurstStage {
+    // most stages one firework may have
+    public static final int MAX_STAGES = 8;
+
+    private final int parent; // burst the stage breaks out of
+    private final int delay; // time steps after the parent bursts
+    private final int every; // break out of every this many particles
+    private final int shape; // BurstShape of each small burst
+    private final int particles; // particles in each small burst
+    private final float r, g, b; // color of the small bursts
+
+    // Creates a stage from its parent, delay in time steps, spacing of the
+    // particles that break, and the shape, size, and color of each small burst
+    public BurstStage(int parent, int delay, int every, int shape, int particles,
+                      float r, float g, float b) {
+        if (parent < 0 || parent >= MAX_STAGES)
+            throw new IllegalArgumentException("Invalid parent stage " + parent);
+        if (delay < 1) throw new IllegalArgumentException("Delay must be positive");
+        if (every < 1) throw new IllegalArgumentException("Spacing must be positive");
+        if (shape < 0 || shape >= BurstShape.count())
+            throw new IllegalArgumentException("Unknown burst shape " + shape);
+        if (particles < 1)
+            throw new IllegalArgumentException("A burst needs at least one particle");
+        this.parent = parent;
+        this.delay = delay;
+        this.every = every;
+        this.shape = shape;
+        this.particles = particles;
+        this.r = r;
+        this.g = g;
+        this.b = b;
+    }
+
+    // Returns the burst the stage breaks out of: 0 for the firework's own
+    // burst, or the number of an earlier stage counting from 1
+    public int getParent() {
+        return parent;
+    }
+
+    // Returns the number of time steps after the parent bursts that the stage
+    // breaks
+    public int getDelay() {
+        return delay;
+    }
+
+    // Returns how many of the parent's particles there are for each one that
+    // breaks into a small burst
+    public int getEvery() {
+        return every;
+    }
+
+    // Returns the BurstShape of each small burst
+    public int getShape() {
+        return shape;
+    }
+
+    // Returns the number of particles in each small burst
+    public int getParticles() {
+        return particles;
+    }
+
+    // Returns red value of the small bursts
+    public float getRed() {
+        return r;
+    }
+
+    // Returns green value of the small bursts
+    public float getGreen() {
+        return g;
+    }
+
+    // Returns blue value of the small bursts
+    public float getBlue() {
+        return b;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        BurstStage stage = new BurstStage(0, 15, 4, BurstShape.RING, 6, 1.0F, 1.0F, 1.0F);
+        StdOut.println("Parent " + stage.getParent() + ", delay " + stage.getDelay()
+                               + ", every " + stage.getEvery() + ", "
+                               + stage.getParticles() + " particles");
+        // should print Parent 0, delay 15, every 4, 6 particles
+        try {
+            new BurstStage(0, 0, 1, BurstShape.RING, 6, 1.0F, 1.0F, 1.0F);
+        }
+        catch (IllegalArgumentException e) {
+            StdOut.println("No delay: " + e.getMessage());
+        }
+    }
+}
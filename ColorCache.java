@@ -0,0 +1,106 @@
+/* This file hands out shared Color objects so that fading particles does not
+   create a new Color every frame. Red, green, blue, and alpha values are
+   rounded to a fixed number of levels, which turns every color into a small
+   integer key. The first request for a key creates its Color and stores it in
+   a lookup table; every later request for the same key returns that same
+   object, so a running show stops allocating colors once its table is warm. */
+
+import java.awt.Color;
+
+public class ColorCache {
+    // number of levels each of red, green, and blue is rounded to
+    private static final int CHANNEL_LEVELS = 32;
+    // number of levels alpha is rounded to
+    private static final int ALPHA_LEVELS = 32;
+
+    // one slot per key, filled the first time the key is requested
+    private static final Color[] TABLE = new Color[CHANNEL_LEVELS * CHANNEL_LEVELS
+            * CHANNEL_LEVELS * ALPHA_LEVELS];
+
+    // Rounds a value between 0 and 1 to the nearest of the given number of levels
+    private static int level(float value, int levels) {
+        int level = (int) (value * (levels - 1) + 0.5F);
+        if (level < 0) return 0;
+        if (level >= levels) return levels - 1;
+        return level;
+    }
+
+    // Returns the table key for a color with values between 0 and 1
+    public static int key(float r, float g, float b, float a) {
+        int key = level(r, CHANNEL_LEVELS);
+        key = key * CHANNEL_LEVELS + level(g, CHANNEL_LEVELS);
+        key = key * CHANNEL_LEVELS + level(b, CHANNEL_LEVELS);
+        return key * ALPHA_LEVELS + level(a, ALPHA_LEVELS);
+    }
+
+    // Returns the shared Color nearest to the given red, green, blue, and alpha
+    public static Color get(float r, float g, float b, float a) {
+        int key = key(r, g, b, a);
+        Color color = TABLE[key];
+        if (color == null) {
+            // rebuild the rounded values from the key so every color in a slot
+            // is the same no matter which values filled it first
+            float max = CHANNEL_LEVELS - 1;
+            int qa = key % ALPHA_LEVELS;
+            int qb = (key / ALPHA_LEVELS) % CHANNEL_LEVELS;
+            int qg = (key / ALPHA_LEVELS / CHANNEL_LEVELS) % CHANNEL_LEVELS;
+            int qr = key / ALPHA_LEVELS / CHANNEL_LEVELS / CHANNEL_LEVELS;
+            color = new Color(qr / max, qg / max, qb / max,
+                              qa / (float) (ALPHA_LEVELS - 1));
+            TABLE[key] = color;
+        }
+        return color;
+    }
+
+    // Fades a 200-particle buffer until it is nearly transparent, looking up
+    // the color of every particle on every frame like a draw would
+    private static int fadeFrames(ParticleBuffer buffer) {
+        int frames = 0;
+        while (buffer.getColorAlpha(0) > 0.01) {
+            buffer.fade(0.9);
+            for (int i = 0; i < buffer.size(); i++) {
+                get(buffer.getRed(i), buffer.getGreen(i), buffer.getBlue(i),
+                    buffer.getColorAlpha(i));
+            }
+            frames++;
+        }
+        return frames;
+    }
+
+    // Creates a 200-particle buffer like the ones in the shows, with colors
+    // varied by a stream made from the given seed
+    private static ParticleBuffer makeBuffer(long seed) {
+        ParticleBuffer buffer = new ParticleBuffer(200, new FireworkRandom(seed));
+        for (int i = 0; i < buffer.capacity(); i++)
+            buffer.add(0, -10, 0.1, 0.69, 0, -0.014, 0.1, 1.0F, 0.1F, 0.0F);
+        return buffer;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // same values return the same shared object
+        Color first = get(0.5F, 0.25F, 1.0F, 0.9F);
+        Color second = get(0.5F, 0.25F, 1.0F, 0.9F);
+        StdOut.println("Shared instance: " + (first == second)); // should print true
+
+        // nearby values round to the same key
+        StdOut.println("Same key: " + (key(0.5F, 0.25F, 1.0F, 0.9F)
+                == key(0.505F, 0.25F, 1.0F, 0.9F))); // should print true
+
+        // warm the table with seeded fades, then replay the same fade and
+        // measure what that run allocates
+        for (int run = 0; run < 2; run++) {
+            fadeFrames(makeBuffer(126));
+        }
+        ParticleBuffer buffer = makeBuffer(126);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)
+                java.lang.management.ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int frames = fadeFrames(buffer);
+        long after = threads.getCurrentThreadAllocatedBytes();
+        StdOut.println("Frames faded: " + frames);
+        StdOut.println("Bytes allocated: " + (after - before)); // should print 0
+        if (after != before)
+            throw new IllegalStateException("Fade path allocated in steady state");
+    }
+}
@@ -1,68 +1,330 @@
 /* This class creates a firework ADT made up of many particles. It contains
    functions that draw particles, launch particles together, and make them explode
    together. There are also some other functions, such as updating the position of
-   particles. */
+   particles. All of its randomness comes from its own FireworkRandom stream.
+   Its particles live in a buffer taken from the ParticlePool (or from its
+   group's arena outside the heap, which the bursts of its stages share), and
+   once it has burst, particles that have faded or left the view are culled every step.
+   It bursts into one of the shapes of BurstShape, a ring unless told
+   otherwise. A new firework can also seek straight to any later time step,
+   which puts its particles where stepping would have, and spawns the bursts
+   its stages would have broken into, without running the steps in between.
+
+   A firework may have BurstStages: after it bursts, some of its particles
+   break into small bursts of their own, and those may break again. Each
+   small burst of a stage is spawned as one more Firework that is already
+   bursting, with particles reserved from the SpawnPool, so the number of
+   spawned particles never passes the show's budget. */
+
+import java.util.List;
 
 public class Firework {
-    private Particle[] firework; // array of particles to form one burst
+    // phases of a firework's life
+    private static final int LAUNCHING = 0; // rising before the burst
+    private static final int BURSTING = 1; // blooming outwards and fading
+    private static final int DONE = 2; // nearly transparent, no longer drawn
+
+    // the show is drawn in the square from -VIEW to VIEW
+    private static final double VIEW = 10.0;
+    // particles more transparent than this are culled
+    private static final float MIN_ALPHA = 0.01F;
+    // speed of the small bursts of a stage, slower than a firework's own burst
+    private static final double STAGE_SPEED = 0.12;
+    // stages of a firework that has none
+    private static final BurstStage[] NO_STAGES = new BurstStage[0];
+
+    private ParticleBuffer firework; // particles that form one burst
     private int quantity; // number of particles in the firework
+    private final int shape; // BurstShape the firework bursts into
+    private final FireworkRandom random; // source of burst and color variation
+    private int phase = LAUNCHING; // current phase of the firework
+    private final BurstStage[] stages; // stages of the whole firework
+    private final int stage; // stage of this burst: 0 for the firework's own
+    private final int spawned; // particles reserved from the SpawnPool
+    private int age; // time steps since the burst
 
     // Creates firework using arguments for number of particles, initial position,
     // velocity, acceleration, size, and color
     public Firework(int number, double px, double py, double vx, double vy,
                     double ax, double ay, double size, float r, float g,
                     float b) {
-        // initialize an array of particle objects
+        this(number, px, py, vx, vy, ax, ay, size, r, g, b, new FireworkRandom());
+    }
+
+    // Creates firework like the constructor above, taking all of its randomness
+    // from the given stream so that a seeded show always looks the same
+    public Firework(int number, double px, double py, double vx, double vy,
+                    double ax, double ay, double size, float r, float g,
+                    float b, FireworkRandom random) {
+        this(number, px, py, vx, vy, ax, ay, size, r, g, b, BurstShape.RING, random);
+    }
+
+    // Creates firework like the constructor above that bursts into the given
+    // BurstShape
+    public Firework(int number, double px, double py, double vx, double vy,
+                    double ax, double ay, double size, float r, float g,
+                    float b, int shape, FireworkRandom random) {
+        this(number, px, py, vx, vy, ax, ay, size, r, g, b, shape, NO_STAGES, random);
+    }
+
+    // Creates firework like the constructor above whose particles break into
+    // the given stages after it bursts. Stage k (counting from 1) may only
+    // break out of the burst or a stage before it.
+    public Firework(int number, double px, double py, double vx, double vy,
+                    double ax, double ay, double size, float r, float g,
+                    float b, int shape, BurstStage[] stages, FireworkRandom random) {
+        if (shape < 0 || shape >= BurstShape.count())
+            throw new IllegalArgumentException("Unknown burst shape " + shape);
+        if (stages.length > BurstStage.MAX_STAGES)
+            throw new IllegalArgumentException("Too many stages: " + stages.length);
+        for (int k = 0; k < stages.length; k++) {
+            if (stages[k].getParent() > k)
+                throw new IllegalArgumentException("Stage " + (k + 1)
+                                                           + " breaks out of a later stage");
+        }
+        // take a buffer with room for every particle from the pool
         quantity = number;
-        firework = new Particle[number];
+        this.shape = shape;
+        this.random = random;
+        this.stages = stages;
+        stage = 0;
+        spawned = 0;
+        firework = ParticlePool.acquire(number, random);
 
-        // initialize identical particle objects for each array element
+        // initialize identical particles for each slot in the buffer
         for (int i = 0; i < quantity; i++)
-            firework[i] = new Particle(px, py, vx, vy, ax, ay, size, r, g, b);
+            firework.add(px, py, vx, vy, ax, ay, size, r, g, b);
     }
 
-    // Change velocities of particles in firework to burst outwards in bloom shape
+    // Change velocities of particles in firework to burst outwards in its shape
     // after hitting burst point
     public void prepareBurst() {
-        double radians = 0; // initial value
-        double totalRadians = 2 * Math.PI; // represents a full circle (2 pi)
-
-        // set up the incrementation to move evenly around the circle
-        double radianInc = totalRadians / quantity;
+        // directions of the shape, worked out once for this many particles
+        BurstShape directions = BurstShape.of(shape, quantity);
         double scaleDown = 0.3; // small number used to scale velocity down lower than 1
 
-        // loop through each particle to give them different velocities
-        // sets up the circular burst motion
+        // loop through each particle to give them different velocities, with
+        // small random variance on each axis so the shape is not skewed
         for (int i = 0; i < quantity; i++) {
-            double rand = StdRandom.uniform(-0.02, 0.02); // create small random variance
-            double xVel = Math.cos(radians) * scaleDown + rand; // update x velocity
-            double yVel = Math.sin(radians) * scaleDown + rand; // update y velocity
-            firework[i].setVx(xVel); // replace particle's velocity
-            firework[i].setVy(yVel); // replace particle's velocity
-            radians += radianInc; // move to next position in circle
+            double xVel = directions.getX(i) * scaleDown + random.uniform(-0.02, 0.02);
+            double yVel = directions.getY(i) * scaleDown + random.uniform(-0.02, 0.02);
+            firework.setVelocity(i, xVel, yVel); // replace particle's velocity
         }
+        phase = BURSTING;
     }
 
-    // Update position of all firework particles
-    public void moveParticles() {
-        for (int i = 0; i < quantity; i++) {
-            firework[i].updatePosition();
+    // Creates the bursting firework of a stage from particles reserved from
+    // the SpawnPool
+    private Firework(ParticleBuffer particles, int shape, BurstStage[] stages,
+                     int stage, int spawned, FireworkRandom random) {
+        firework = particles;
+        quantity = particles.size();
+        this.shape = shape;
+        this.random = random;
+        this.stages = stages;
+        this.stage = stage;
+        this.spawned = spawned;
+        phase = BURSTING;
+    }
+
+    // Moves the firework by one time step through its whole life: rising until
+    // the burst point, then bursting, then fading until nearly transparent.
+    // Returns true if the firework burst in this step.
+    public boolean step() {
+        if (phase == LAUNCHING) {
+            if (pastBurstPoint()) {
+                prepareBurst(); // update all velocities to burst
+                return true;
+            }
+            moveParticles();
+        }
+        else if (phase == BURSTING) {
+            moveParticles();
+            fade(0.9); // update colors and fade
+            firework.cull(MIN_ALPHA, VIEW); // stop updating particles no one can see
+            if (getColorAlpha() <= 0.01) phase = DONE;
+            age++;
         }
+        return false;
     }
 
-    // Draws all individual particles of firework
-    public void draw() {
-        for (int i = 0; i < quantity; i++) {
-            firework[i].draw();
+    // Adds the bursting fireworks of every stage that breaks out of this
+    // burst at its current age to the list. Returns the number added.
+    public int spawn(List<Firework> bursts) {
+        if (phase != BURSTING) return 0;
+        int added = 0;
+        for (int k = 0; k < stages.length; k++) {
+            if (stages[k].getParent() != stage || stages[k].getDelay() != age) continue;
+            Firework child = spawnStage(k + 1);
+            if (child != null) {
+                bursts.add(child);
+                added++;
+            }
         }
+        return added;
+    }
+
+    // Breaks every chosen particle into a small burst of the stage with the
+    // given number and returns them as one bursting firework, or returns null
+    // if there is no particle to break or no room in the SpawnPool
+    private Firework spawnStage(int number) {
+        BurstStage next = stages[number - 1];
+        int every = next.getEvery();
+        int spawners = (firework.size() + every - 1) / every; // particles that break
+        if (spawners == 0) return null;
+        int each = next.getParticles();
+        int bursts = SpawnPool.reserve(spawners, each);
+        if (bursts == 0) return null;
+        // when not every burst fits, merge neighbours or drop the ones between
+        boolean merge = bursts < spawners && SpawnPool.merges();
+
+        FireworkRandom childRandom = random.split();
+        ParticleBuffer particles = ParticlePool.acquire(bursts * each, childRandom, firework);
+        BurstShape directions = BurstShape.of(next.getShape(), each);
+        double ax = firework.getAx(0), ay = firework.getAy(0);
+        double size = firework.getSize(0);
+        for (int j = 0; j < bursts; j++) {
+            // burst j breaks out of the spawners from lo up to, but not
+            // including, hi, at their average position and velocity
+            int lo = (int) ((long) j * spawners / bursts);
+            int hi = merge ? (int) ((long) (j + 1) * spawners / bursts) : lo + 1;
+            double px = 0, py = 0, vx = 0, vy = 0;
+            for (int k = lo; k < hi; k++) {
+                int i = k * every;
+                px += firework.getPx(i);
+                py += firework.getPy(i);
+                vx += firework.getVx(i);
+                vy += firework.getVy(i);
+            }
+            int n = hi - lo;
+            px /= n;
+            py /= n;
+            vx /= n;
+            vy /= n;
+            for (int k = 0; k < each; k++) {
+                double xVel = vx + directions.getX(k) * STAGE_SPEED
+                        + childRandom.uniform(-0.01, 0.01);
+                double yVel = vy + directions.getY(k) * STAGE_SPEED
+                        + childRandom.uniform(-0.01, 0.01);
+                particles.add(px, py, xVel, yVel, ax, ay, size,
+                              next.getRed(), next.getGreen(), next.getBlue());
+            }
+        }
+        return new Firework(particles, next.getShape(), stages, number, bursts * each,
+                            childRandom);
+    }
+
+    // Moves a new firework forward by the given number of time steps at once,
+    // leaving it in the phase, and its particles at the positions, velocities,
+    // and opacity, that calling step() that many times would. The burst
+    // points are checked one step at a time, with the same random numbers as
+    // step(), but the particles are moved and faded in closed form, so this
+    // takes time in proportion to the particles, not the steps. Positions
+    // may differ from stepping by rounding, and colors are only varied as
+    // much as stepping would on average. Stages that would have broken out by
+    // then are spawned from the particles as they were at that time, with
+    // room reserved from the SpawnPool as spawn() does, and moved forward the
+    // rest of the steps the same way. Their bursts, and those of their own
+    // stages, are added to the list. Returns the number added.
+    public int seek(int steps, List<Firework> bursts) {
+        if (phase != LAUNCHING || steps < 0)
+            throw new IllegalStateException("Only a new firework can seek forward");
+        double vy = firework.getVy(0); // all particles rise together
+        double ay = firework.getAy(0);
+        int rising = 0; // steps the firework rises before it bursts
+        while (rising < steps && !isPast(vy + rising * ay)) rising++;
+        firework.advance(rising);
+        if (rising == steps) return 0; // still launching
+
+        // the next step bursts, and every one after it moves, fades, and culls
+        prepareBurst();
+        return seekBurst(steps - rising - 1, bursts);
+    }
+
+    // Moves a bursting firework forward by the given number of time steps at
+    // once, stopping at the age of every stage that breaks out of it on the
+    // way to spawn that stage and move its bursts the rest of the steps. Adds
+    // the bursts to the list and returns the number added.
+    private int seekBurst(int steps, List<Firework> bursts) {
+        int end = age + steps;
+        int added = 0;
+        while (phase == BURSTING && age < end) {
+            // the next age at which a stage breaks out of this burst, or the end
+            int next = end;
+            for (int k = 0; k < stages.length; k++) {
+                int delay = stages[k].getDelay();
+                if (stages[k].getParent() == stage && delay > age && delay < next)
+                    next = delay;
+            }
+            firework.advance(next - age);
+            firework.fade(0.9, next - age);
+            firework.cull(MIN_ALPHA, VIEW);
+            if (getColorAlpha() <= 0.01) phase = DONE;
+            age = next;
+
+            // the stages' bursts start moving in the step after they break out
+            int first = bursts.size();
+            int broke = spawn(bursts);
+            added += broke;
+            for (int i = first; i < first + broke; i++)
+                added += bursts.get(i).seekBurst(end - age, bursts);
+        }
+        return added;
+    }
+
+    // Return true if the firework has not burst yet
+    public boolean isLaunching() {
+        return phase == LAUNCHING;
+    }
+
+    // Return true if the firework has burst and is still visible
+    public boolean isBursting() {
+        return phase == BURSTING;
+    }
+
+    // Return true if the firework has burst and faded away
+    public boolean isDone() {
+        return phase == DONE;
+    }
+
+    // Hands the firework's particles back to the pool once it is done. The
+    // firework must not be drawn or moved again.
+    public void release() {
+        if (firework == null) return;
+        ParticlePool.release(firework);
+        SpawnPool.release(spawned);
+        firework = null;
+        phase = DONE;
+    }
+
+    // Update position of all firework particles
+    public void moveParticles() {
+        long start = FrameStats.start();
+        firework.step();
+        FrameStats.stop(FrameStats.MOVE, start);
+    }
+
+    // Fades all firework particles by multiplying their alpha by the decrementer
+    public void fade(double decrementer) {
+        long start = FrameStats.start();
+        firework.fade(decrementer);
+        FrameStats.stop(FrameStats.FADE, start);
+    }
+
+    // Draws all individual particles of firework with the given renderer
+    public void draw(Renderer renderer) {
+        long start = FrameStats.start();
+        renderer.draw(firework);
+        FrameStats.stop(FrameStats.DRAW, start);
+        FrameStats.drawn(firework.size());
     }
 
     // Returns a string showing the positions of every particle in the firework
     public String positionsString() {
         StringBuilder string = new StringBuilder("Particle Positions: \n");
-        for (int i = 0; i < quantity; i++) {
-            string.append("x: " + firework[i].getPx() + "\n");
-            string.append("y: " + firework[i].getPy() + "\n");
+        for (int i = 0; i < firework.size(); i++) {
+            string.append("x: " + firework.getPx(i) + "\n");
+            string.append("y: " + firework.getPy(i) + "\n");
         }
         return string.toString();
     }
@@ -70,50 +332,35 @@ public class Firework {
     // Returns a string showing the velocities of every particle in the firework
     public String velocitiesString() {
         StringBuilder string = new StringBuilder("Particle Velocities: \n");
-        for (int i = 0; i < quantity; i++) {
-            string.append("x: " + firework[i].getVx() + "\n");
-            string.append("y: " + firework[i].getVy() + "\n");
+        for (int i = 0; i < firework.size(); i++) {
+            string.append("x: " + firework.getVx(i) + "\n");
+            string.append("y: " + firework.getVy(i) + "\n");
         }
         return string.toString();
     }
 
+    // Returns true when the firework has slowed down to its burst point. The
+    // burst point is varied slightly every time it is checked.
+    public boolean pastBurstPoint() {
+        return isPast(firework.getVy(0));
+    }
+
+    // Returns true if a firework rising with the given y-velocity has reached
+    // its burst point, varied by a new random number
+    private boolean isPast(double vy) {
+        // create small random variation in the burst point
+        double burstPoint = random.gaussian(0, 0.15);
+        return vy <= burstPoint;
+    }
+
     // Draws firework launching upwards with initial velocities before burst
     public void launch(String image) {
-        // loops as long as firework has not reached burst point
-        for (int i = 0; i < Double.POSITIVE_INFINITY; i++) {
-            // create small random variation in the burst point
-            double burstPoint = StdRandom.gaussian(0, 0.15);
-            // break from launch when y velocity is below burst point
-            if (firework[0].getVy() <= burstPoint)
-                break;
-            draw();
-            StdDraw.show();
-            moveParticles(); // update positions
-            StdDraw.pause(30); // pause briefly between time steps
-            StdDraw.picture(0, 0, image); // clear to background image
-        }
+        new ShowEngine(new StdDrawRenderer()).launch(this, image);
     }
 
     // Draw exploding firework in bloom shape with new velocities
     public void burst(String image) {
-        prepareBurst(); // update all velocities to burst
-        StdAudio.play("explosion.wav"); // bursting sound
-        int counter = 0; // counts number of time steps
-        // loops until firework is nearly transparent
-        while (firework[0].getColorAlpha() > 0.01) {
-            // display firework
-            draw();
-            StdDraw.show();
-            moveParticles();
-            StdDraw.pause(30); // pause briefly between steps
-            if (counter % 5 == 0) // clear every five time steps to create tails
-                StdDraw.picture(0, 0, image); // clear to image
-            for (int j = 0; j < quantity; j++) {
-                firework[j].updateColor(0.9); // update colors and fade
-            }
-            counter++; // move on to next time step and keep track
-        }
-        StdDraw.picture(0, 0, image); // clear to image
+        new ShowEngine(new StdDrawRenderer()).burst(this, image);
     }
 
     // Return the number of particles in the firework
@@ -121,9 +368,27 @@ public class Firework {
         return quantity;
     }
 
-    // Return a specific particle from the firework given an integer index
-    public Particle getParticle(int index) {
-        return firework[index];
+    // Return the BurstShape the firework bursts into
+    public int getShape() {
+        return shape;
+    }
+
+    // Return color opacity of the firework, which all particles share, or 0
+    // once every particle has been culled
+    public float getColorAlpha() {
+        if (firework == null || firework.size() == 0) return 0;
+        return firework.getColorAlpha(0);
+    }
+
+    // Return y-velocity of the firework's first particle, which is the same
+    // for every particle until the firework bursts
+    public double getVy() {
+        return firework.getVy(0);
+    }
+
+    // Return the buffer that stores the firework's particles
+    public ParticleBuffer getParticles() {
+        return firework;
     }
 
     // main method to test
@@ -167,7 +432,7 @@ public class Firework {
         StdOut.println(test.velocitiesString());
 
         // test draw
-        test.draw();
+        test.draw(new StdDrawRenderer());
         StdDraw.show();
     }
 }
\ No newline at end of file
@@ -1,266 +1,183 @@
 /* This client creates the three features of the project: the firework show,
-learning stage, and firework quiz. */
+learning stage, and firework quiz.
 
-public class FireworkDisplay {
-
-    // Returns maximum alpha value (transparency) among all fireworks in a symbol
-    // table of fireworks.
-    public static float maxAlpha(ST<Integer, Firework> group) {
-        // starts at low value, tracks max alpha value throughout symbol table
-        double max = 0.0;
-
-        // goes through symbol table and updates max alpha value
-        for (int i = 0; i < group.size(); i++) {
-            // gets first particle of firework in symbol table
-            Firework temp = group.get(i);
-            Particle singleParticle = temp.getParticle(0);
+It runs as a state machine of scenes: the start screen, the main menu, the
+show menu, learning mode, the quiz, and the end screen. Each scene draws its
+screen once, then waits for a key press or mouse click from InputEvents and
+returns the scene to go to next; it only draws again when what it shows
+changes. Nothing is redrawn while the program waits at a menu, so an idle
+kiosk uses no processor time. */
 
-            double currentAlpha = singleParticle.getColorAlpha();
-
-            // updates max alpha if current firework's particles have higher alpha
-            if (currentAlpha > max) max = currentAlpha;
-        }
-        // returns max alpha
-        return (float) max;
+public class FireworkDisplay {
+    // scenes of the program
+    private static final int START = 0; // welcome screen
+    private static final int MAIN = 1; // main menu
+    private static final int SHOW = 2; // show menu
+    private static final int LEARN = 3; // learning mode
+    private static final int QUIZ = 4; // firework quiz
+    private static final int END = 5; // goodbye screen
+
+    // pictures, sounds, and show scripts loaded while the welcome screen shows
+    private static final String[] ASSETS = {
+            "MainMenu.jpeg", "ShowMenu.jpeg", "LearnMenu.jpeg", "GameMenu.jpeg",
+            "EndScreen.jpeg", "learnSky.jpeg", "explosion.wav",
+            "FourthOfJuly.txt", "EDMdance.txt", "Rainbow.txt"
+    };
+
+    // plays shows and learning fireworks in the StdDraw window in real time;
+    // main switches it to the fastest renderer once the canvas exists
+    private static ShowEngine engine = new ShowEngine(new StdDrawRenderer());
+
+    // Returns the renderer for the window: the pixel rasterizer when frames
+    // can be copied into StdDraw's canvas, and StdDraw's own shapes otherwise
+    private static Renderer windowRenderer() {
+        if (StdDrawCanvas.isAvailable())
+            return new RasterRenderer(StdDrawCanvas.width(), StdDrawCanvas.height());
+        return new StdDrawRenderer();
     }
 
     // Draws a group of fireworks launching all together and bursting.
     // Needs symbol table of fireworks and a background image to clear to.
+    // Fireworks made between ParticlePool.startGroup() and endGroup() share
+    // one arena outside the heap when -Dfireworks.offheap=true, which is freed
+    // once the whole group has faded.
     public static void multipleLaunchBurst(ST<Integer, Firework> group, String image) {
-        // tracks how many times the fireworks have been drawn
-        int n = 0;
-
-        // tracks whether one of the fireworks in the groups exploded already
-        boolean hasOneBurst = false;
-
-        // draws motion of firework group until all fireworks are nearly transparent
-        while (maxAlpha(group) > 0.01F) {
-            // iterates through firework group and draws/updates them as necessary
-            for (int i = 0; i < group.size(); i++) {
-                // randomizes burst point
-                double burstPoint = StdRandom.gaussian(0, 0.15);
-
-                // gets first particle of current firework
-                Firework temp = group.get(i);
-                Particle singleParticle = temp.getParticle(0);
-
-                // draws firework when it has exploded (alpha has been decremented)
-                if (singleParticle.getColorAlpha() < 1.0F) {
-                    (group.get(i)).draw(); // draws firework
-                    (group.get(i)).moveParticles(); // updates position of particles
-
-                    // updates color of every particle in firework
-                    for (int j = 0; j < temp.getQuantity(); j++) {
-                        Particle singleParticleTwo = temp.getParticle(j);
-                        // multiplies alpha values by 0.9 so that they decrease
-                        singleParticleTwo.updateColor(0.9);
-                    }
-                }
-
-                // updates color and plays sound as firework first passes burst point
-                else if (singleParticle.getVy() <= burstPoint) {
-                    // decrements alpha values so that it will enter previous if
-                    // statement in next loop around
-                    for (int j = 0; j < (group.get(i)).getQuantity(); j++) {
-                        Particle tempParticle = (group.get(i)).getParticle(j);
-                        tempParticle.updateColor(0.999);
-                    }
-
-                    // plays explosion sound
-                    StdAudio.play("explosion.wav");
-
-                    // updates velocities in preparation of explosion
-                    (group.get(i)).prepareBurst();
-
-                    hasOneBurst = true;
-                }
-
-                // draws firework and updates position while it is being launched up
-                else {
-                    (group.get(i)).draw();
-                    (group.get(i)).moveParticles();
-                }
-            }
-            // displays fireworks after they are all drawn
-            StdDraw.show();
-            StdDraw.pause(30); // pause briefly
+        engine.launchBurst(group, image);
+    }
 
-            // clears to picture every step when no firework has burst yet
-            if (!hasOneBurst) StdDraw.picture(0, 0, image);
+    // Shows the welcome screen for three seconds, or until a key or mouse
+    // button is pressed, while every other picture, sound, and show loads in
+    // the background, and returns the main menu once they have
+    private static int start() {
+        StdDrawCanvas.picture("StartMenu.jpeg");
+        StdDraw.show();
+        AssetManager.frameShown();
+        AssetManager.start(StdDrawCanvas.width(), StdDrawCanvas.height(), ASSETS);
+        InputEvents.poll(3000); // wait before moving on to game
+        // let loading finish so no menu or show waits for a file, but never
+        // keep the welcome screen up for long if a file is very slow
+        AssetManager.await(10000);
+        if (FrameStats.ENABLED) AssetManager.report();
+        return MAIN;
+    }
 
-            // creates layered bloom when fireworks burst by clearing every fifth step
-            else if (n % 5 == 0) StdDraw.picture(0, 0, image);
+    // Shows the main menu and returns the scene the user chooses
+    private static int mainMenu() {
+        // display menu
+        StdDrawCanvas.picture("MainMenu.jpeg"); // menu screen
+        StdDraw.show();
+        while (true) {
+            InputEvents.Event event = InputEvents.take();
+            // check that user wants to keep playing
+            if (event.isKey('9')) return END; // exit to goodbye screen
 
-            n++;
+            // check user choice of mode
+            if (event.isClickIn(-8, 8, 4, 8)) return SHOW; // choice 1 - Show
+            if (event.isClickIn(-8, 8, -2, 2)) return LEARN; // choice 2 - Learn
+            if (event.isClickIn(-8, 8, -8, -4)) return QUIZ; // choice 3 - Quiz
         }
-        // clear to picture after fireworks are nearly transparent
-        StdDraw.picture(0, 0, image);
     }
 
     // Simulate show mode to create a timed show with fireworks and music.
-    private static void show() {
-        while (true) {
-            // display options
-            StdDraw.picture(0, 0, "ShowMenu.jpeg");
-            StdDraw.show();
-
-            // keeps track of selected choice
-            String fileName = "";
+    private static int show() {
+        // display options
+        StdDrawCanvas.picture("ShowMenu.jpeg");
+        StdDraw.show();
 
-            if (StdDraw.isKeyPressed('1')) { // choice 1 - fourth of july
+        // keeps track of selected choice
+        String fileName = "";
+        while (fileName.isEmpty()) {
+            InputEvents.Event event = InputEvents.take();
+            if (event.isKey('1')) { // choice 1 - fourth of july
                 fileName = "FourthOfJuly.txt";
             }
-            else if (StdDraw.isKeyPressed('2')) { // choice 2 - EDM
+            else if (event.isKey('2')) { // choice 2 - EDM
                 fileName = "EDMdance.txt";
             }
-            else if (StdDraw.isKeyPressed('3')) { // choice 3 - Rainbow
+            else if (event.isKey('3')) { // choice 3 - Rainbow
                 fileName = "Rainbow.txt";
             }
-            else if (StdDraw.isKeyPressed('Z')) // user wants to exit mode
-            {
-                return; // end function
-            }
-            else {
-                continue; // choose no option if wrong key is pressed
+            else if (event.isKey('Z')) { // user wants to exit mode
+                return MAIN;
             }
-
-            // initialize reader for correct file
-            In reader = new In(fileName);
-            String songName = reader.readString(); // get song
-            String pictureName = reader.readString(); // get background
-
-            // display show
-            StdDraw.picture(0, 0, pictureName); // show background image
-            StdDraw.show();
-            StdAudio.play(songName); // start song
-
-            while (!reader.isEmpty()) {
-                // identifies single firework or firework group
-                int loops = reader.readInt();
-
-                // displays a firework group based on text file input
-                if (loops > 1) {
-                    ST<Integer, Firework> group = new ST<Integer, Firework>();
-
-                    // creates fireworks from input and enters them into symbol table
-                    for (int i = 0; i < loops; i++) {
-                        int numP = reader.readInt(); // number of particles
-                        double px = reader.readDouble(); // get x position
-                        double py = reader.readDouble(); // get y position
-                        double vx = reader.readDouble(); // get x velocity
-                        double vy = reader.readDouble(); // get y velocity
-                        double ax = reader.readDouble(); // get x acceleration
-                        double ay = reader.readDouble(); // get y acceleration
-                        double size = reader.readDouble(); // get size of particles
-                        float r = reader.readFloat(); // get red value
-                        float g = reader.readFloat(); // get blue value
-                        float b = reader.readFloat(); // get green value
-                        Firework temp = new Firework(numP, px, py, vx, vy, ax, ay, size,
-                                                     r, g, b);
-                        group.put(i, temp);
-                    }
-                    // launch and explode firework group over background
-                    multipleLaunchBurst(group, pictureName);
-                }
-
-                // displays a single firework based on text file input
-                else {
-                    int numP = reader.readInt(); // number of particles
-                    double px = reader.readDouble(); // get x position
-                    double py = reader.readDouble(); // get y position
-                    double vx = reader.readDouble(); // get x velocity
-                    double vy = reader.readDouble(); // get y velocity
-                    double ax = reader.readDouble(); // get x acceleration
-                    double ay = reader.readDouble(); // get y acceleration
-                    double size = reader.readDouble(); // get size of particles
-                    float r = reader.readFloat(); // get red value
-                    float g = reader.readFloat(); // get blue value
-                    float b = reader.readFloat(); // get green value
-                    Firework fw = new Firework(numP, px, py, vx, vy, ax, ay, size,
-                                               r, g, b); // create firework
-                    fw.launch(pictureName); // launch firework over background
-                    fw.burst(pictureName); // explode firework over background
-                }
-            }
-            return; // get back to main menu after text file is empty
+            // choose no option if wrong key is pressed
         }
+
+        // play the show from the text file in the window with its song,
+        // or from the cue given by -Dfireworks.start in milliseconds
+        engine.play(fileName, Long.getLong("fireworks.start", 0));
+        if (FrameStats.ENABLED) AssetManager.report(); // how long the show took to start
+        InputEvents.clear(); // ignore presses made during the show
+        return MAIN; // get back to main menu after text file is empty
     }
 
     // Simulate learning mode for fireworks to be launched based on user choice.
-    private static void learn() {
+    private static int learn() {
         while (true) {
-            // prevent double clicking issue
-            StdDraw.pause(200);
-
             // display menu
-            StdDraw.picture(0, 0, "LearnMenu.jpeg");
+            StdDrawCanvas.picture("LearnMenu.jpeg");
             StdDraw.show();
 
-            // check that user wants to keep playing
-            // adapted from XOXOStdDraw program in class materials
-            if (StdDraw.isKeyPressed('1')) {
-                return; // exit learn mode if 1 is pressed
-            }
-
             // initialize color values to 0
             float r = 0.0F;
             float g = 0.0F;
             float b = 0.0F;
 
-            // match mouse click to chemical choice
-            // adapted from XOXOStdDraw program in class materials
-            if (StdDraw.isMousePressed()) {
-                // tracks coordinates of mouse click
-                double x = StdDraw.mouseX();
-                double y = StdDraw.mouseY();
-
-                if (x >= -8 && x <= 8) {
-                    if (y >= 6.5 && y <= 8.5) { // choice 1 - red
-                        r = 1.0F;
-                    }
-                    else if (y >= 3.5 && y <= 5.5) { // choice 2 - orange
-                        r = 1.0F;
-                        g = 0.6F;
-                    }
-                    else if (y >= 0.5 && y <= 2.5) { // choice 3 - yellow
-                        r = 1.0F;
-                        g = 1.0F;
-                    }
-                    else if (y >= -2.5 && y <= -0.5) { // choice 4 - green
-                        r = 0.5F;
-                        g = 0.9F;
-                        b = 0.2F;
-                    }
-                    else if (y >= -5.5 && y <= -3.5) { // choice 5 - blue
-                        r = 0.364F;
-                        g = 0.501F;
-                        b = 0.976F;
-                    }
-                    else if (y >= -8.5 && y <= -6.5) { // choice 6 - purple
-                        r = 0.8F;
-                        g = 0.509F;
-                        b = 0.972F;
-                    }
-                    else continue; // account for wrong click
-
-                    // create firework
-                    Firework fw = new Firework(100, 0, -5, 0, 0.5,
-                                               0, -0.0098, 0.1, r, g, b);
-                    String pictureName = "learnSky.jpeg"; // background to be sent
+            // wait for a chemical to be chosen
+            boolean chosen = false;
+            while (!chosen) {
+                InputEvents.Event event = InputEvents.take();
+                if (event.isKey('1')) {
+                    return MAIN; // exit learn mode if 1 is pressed
+                }
+                if (!event.isClickIn(-8, 8, -8.5, 8.5)) continue;
 
-                    // display single firework launching and exploding
-                    fw.launch(pictureName);
-                    fw.burst(pictureName);
+                // match mouse click to chemical choice
+                double y = event.getY();
+                chosen = true;
+                if (y >= 6.5 && y <= 8.5) { // choice 1 - red
+                    r = 1.0F;
+                }
+                else if (y >= 3.5 && y <= 5.5) { // choice 2 - orange
+                    r = 1.0F;
+                    g = 0.6F;
+                }
+                else if (y >= 0.5 && y <= 2.5) { // choice 3 - yellow
+                    r = 1.0F;
+                    g = 1.0F;
+                }
+                else if (y >= -2.5 && y <= -0.5) { // choice 4 - green
+                    r = 0.5F;
+                    g = 0.9F;
+                    b = 0.2F;
                 }
+                else if (y >= -5.5 && y <= -3.5) { // choice 5 - blue
+                    r = 0.364F;
+                    g = 0.501F;
+                    b = 0.976F;
+                }
+                else if (y >= -8.5 && y <= -6.5) { // choice 6 - purple
+                    r = 0.8F;
+                    g = 0.509F;
+                    b = 0.972F;
+                }
+                else chosen = false; // account for wrong click
             }
+
+            // create firework
+            Firework fw = new Firework(100, 0, -5, 0, 0.5,
+                                       0, -0.0098, 0.1, r, g, b);
+            String pictureName = "learnSky.jpeg"; // background to be sent
+
+            // display single firework launching and exploding
+            engine.launch(fw, pictureName);
+            engine.burst(fw, pictureName);
+            InputEvents.clear(); // ignore clicks made while it played
         }
     }
 
     // Simulate quiz mode for player to match chemicals to firework colors.
-    private static void quiz() {
-        // pause shortly so that mouse does not double click when choosing quiz
-        StdDraw.pause(200);
-
+    private static int quiz() {
         // create symbol table that associates an integer with a String array
         // of questions and answers
         ST<Integer, String[]> questions = new ST<Integer, String[]>();
@@ -284,7 +201,7 @@ public class FireworkDisplay {
         while (!questions.isEmpty()) {
             // display quiz board with score before picking an answer each time
             StdDraw.setPenColor(StdDraw.BLACK);
-            StdDraw.picture(0, 0, "GameMenu.jpeg");
+            StdDrawCanvas.picture("GameMenu.jpeg");
             StdDraw.text(8, 8, "" + score);
             StdDraw.show();
 
@@ -304,16 +221,17 @@ public class FireworkDisplay {
 
             // waits for user to click a color
             while (true) {
+                InputEvents.Event event = InputEvents.take();
                 // exits quiz if you press X
-                if (StdDraw.isKeyPressed('X')) {
-                    return;
+                if (event.isKey('X')) {
+                    return MAIN;
                 }
 
                 // tracks which color is clicked
-                if (StdDraw.isMousePressed()) {
+                if (event.isClick()) {
                     // coordinates of mouse click
-                    double x = StdDraw.mouseX();
-                    double y = StdDraw.mouseY();
+                    double x = event.getX();
+                    double y = event.getY();
 
                     // for colors in left column
                     if (x >= -8 && x <= -2) {
@@ -369,7 +287,7 @@ public class FireworkDisplay {
 
                         // mark as correct and change score before next question
                         StdDraw.setPenColor(8, 207, 7); // green color
-                        StdDraw.picture(0, 0, "GameMenu.jpeg");
+                        StdDrawCanvas.picture("GameMenu.jpeg");
                         StdDraw.text(-2, 6, "Correct!");
                         StdDraw.text(8, 8, "" + score);
                         StdDraw.show();
@@ -382,7 +300,7 @@ public class FireworkDisplay {
 
                         // mark as incorrect and change score before next question
                         StdDraw.setPenColor(208, 6, 11); // red color
-                        StdDraw.picture(0, 0, "GameMenu.jpeg");
+                        StdDrawCanvas.picture("GameMenu.jpeg");
                         StdDraw.text(-2, 6, "Incorrect :(");
                         StdDraw.text(8, 8, "" + score);
                         StdDraw.show();
@@ -390,13 +308,14 @@ public class FireworkDisplay {
                     }
 
                     // goes back into original while loop to get new random chemical
+                    InputEvents.clear(); // ignore clicks made during the pause
                     break;
                 }
             }
         }
 
         // gives game over screen and feedback on quiz performance
-        StdDraw.picture(0, 0, "GameMenu.jpeg");
+        StdDrawCanvas.picture("GameMenu.jpeg");
         StdDraw.setPenColor(StdDraw.BLACK);
         StdDraw.text(8, 8, "" + score);
         StdDraw.text(-2, 7, "Game Over");
@@ -409,6 +328,8 @@ public class FireworkDisplay {
         else StdDraw.text(-2, 6, "Consider going back to learning mode.");
         StdDraw.show();
         StdDraw.pause(4000); // pause once quiz is done and return to main menu
+        InputEvents.clear();
+        return MAIN;
     }
 
     public static void main(String[] args) {
@@ -419,45 +340,25 @@ public class FireworkDisplay {
 
         StdDraw.enableDoubleBuffering();
 
-        // welcome screen
-        StdDraw.picture(0, 0, "StartMenu.jpeg");
-        StdDraw.show();
-        StdDraw.pause(3000); // wait before moving on to game
-
-        boolean programOver = false;
-        while (!programOver) { // start game to be repeated
-            // display menu
-            StdDraw.picture(0, 0, "MainMenu.jpeg"); // menu screen
-            StdDraw.show();
-            // check that user wants to keep playing
-            // adapted from XOXOStdDraw program in class materials
-            if (StdDraw.isKeyPressed('9')) {
-                programOver = true; // end loop and exit to goodbye screen
-            }
-
-            // adapted from XOXOStdDraw program in class materials
-            // check user choice of mode
-            if (StdDraw.isMousePressed()) {
-                // tracks coordinates of mouse click
-                double x = StdDraw.mouseX();
-                double y = StdDraw.mouseY();
-
-                if (x >= -8 && x <= 8) {
-                    if (y >= 4 && y <= 8) { // choice 1 - Show
-                        show();
-                    }
-                    else if (y >= -2 && y <= 2) { // choice 2 - Learn
-                        learn();
-                    }
-                    else if (y >= -8 && y <= -4) { // choice 3 - Quiz
-                        quiz();
-                    }
-                }
-            }
+        // update large fireworks on every core
+        ParticleWorkers.setThreads(Runtime.getRuntime().availableProcessors());
+        engine = new ShowEngine(windowRenderer());
+
+        // queue key presses and mouse clicks instead of polling for them
+        InputEvents.start();
+
+        // run each scene until it names the next one
+        int scene = START;
+        while (scene != END) {
+            if (scene == START) scene = start();
+            else if (scene == MAIN) scene = mainMenu();
+            else if (scene == SHOW) scene = show();
+            else if (scene == LEARN) scene = learn();
+            else scene = quiz();
         }
-        StdDraw.picture(0, 0, "EndScreen.jpeg"); // draw goodbye screen
+        StdDrawCanvas.picture("EndScreen.jpeg"); // draw goodbye screen
         StdDraw.show();
         StdDraw.pause(4000); // wait before closing game
         System.exit(0); // closes StdDraw window and ends program
     }
-}
\ No newline at end of file
+}
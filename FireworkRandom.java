@@ -0,0 +1,282 @@
+/* This file gives each show its own stream of random numbers instead of the
+   global StdRandom. A stream made from a seed always produces the same numbers
+   in the same order, so a show run twice with the same seed looks exactly the
+   same. The functions mirror the ones from StdRandom that fireworks use. A
+   stream can be split into independent child streams, which lets several
+   threads draw random numbers at once without sharing a stream.
+
+   Gaussian numbers come from the ziggurat method of Marsaglia and Tsang, in
+   the form given by Doornik. The bell curve is covered by 128 stacked
+   rectangles of equal area, kept in two small tables. Almost every number
+   takes one 64-bit draw, one table lookup, and one multiply; only the rare
+   draws that land on the curved edge of a rectangle or in the tail past its
+   last rectangle need a logarithm or an exponential. The polar method of
+   StdRandom, which needs two draws, a logarithm, and a square root for every
+   number, is kept as gaussianPolar() to test against. The fill functions
+   put a whole array of random numbers in place with one call, so loops that
+   vary every particle do not pay for a call per number. */
+
+import java.util.SplittableRandom;
+
+public class FireworkRandom {
+    // number of rectangles in the ziggurat
+    private static final int LAYERS = 128;
+    // right edge of the bottom rectangle, where the tail starts
+    private static final double TAIL = 3.442619855899;
+    // area of each rectangle, for a curve of height 1 at 0
+    private static final double AREA = 9.91256303526217e-3;
+    // right edge of each rectangle, widest at the bottom
+    private static final double[] EDGE = new double[LAYERS + 1];
+    // fraction of each rectangle that lies wholly under the curve
+    private static final double[] INSIDE = new double[LAYERS];
+
+    static {
+        double f = Math.exp(-0.5 * TAIL * TAIL);
+        EDGE[0] = AREA / f; // the bottom layer also holds the tail
+        EDGE[1] = TAIL;
+        EDGE[LAYERS] = 0;
+        for (int i = 2; i < LAYERS; i++) {
+            EDGE[i] = Math.sqrt(-2 * Math.log(AREA / EDGE[i - 1] + f));
+            f = Math.exp(-0.5 * EDGE[i] * EDGE[i]);
+        }
+        for (int i = 0; i < LAYERS; i++) INSIDE[i] = EDGE[i + 1] / EDGE[i];
+    }
+
+    private final SplittableRandom random; // source of uniform random bits
+
+    // Creates a stream with an unpredictable seed
+    public FireworkRandom() {
+        random = new SplittableRandom();
+    }
+
+    // Creates a stream that always produces the same numbers for the same seed
+    public FireworkRandom(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    // Creates a stream that draws from the given generator
+    private FireworkRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
+    // Returns a new stream that is independent of this one. Splitting a seeded
+    // stream the same number of times always gives the same child streams.
+    public FireworkRandom split() {
+        return new FireworkRandom(random.split());
+    }
+
+    // Returns a random real number uniformly in [0, 1)
+    public double uniform() {
+        return random.nextDouble();
+    }
+
+    // Returns a random real number uniformly in [a, b)
+    public double uniform(double a, double b) {
+        if (!(a < b))
+            throw new IllegalArgumentException("Invalid range: [" + a + ", " + b + ")");
+        return a + uniform() * (b - a);
+    }
+
+    // Returns a random real number from a standard gaussian distribution
+    public double gaussian() {
+        while (true) {
+            long bits = random.nextLong();
+            int layer = (int) bits & (LAYERS - 1); // low 7 bits pick a rectangle
+            double u = (bits >> 11) * 0x1.0p-52; // high 53 bits, uniform in [-1, 1)
+            if (Math.abs(u) < INSIDE[layer]) return u * EDGE[layer]; // wholly under
+            if (layer == 0) return tail(u < 0);
+
+            // the point is on the curved edge: keep it if it is under the curve
+            double x = u * EDGE[layer];
+            double top = Math.exp(-0.5 * (EDGE[layer] * EDGE[layer] - x * x));
+            double bottom = Math.exp(-0.5 * (EDGE[layer + 1] * EDGE[layer + 1] - x * x));
+            if (bottom + uniform() * (top - bottom) < 1.0) return x;
+        }
+    }
+
+    // Returns a random real number from the tail of the gaussian distribution
+    // beyond TAIL, on the negative side if negative is true
+    private double tail(boolean negative) {
+        double x, y;
+        do {
+            x = Math.log(1.0 - uniform()) / TAIL; // 1 - uniform() is never 0
+            y = Math.log(1.0 - uniform());
+        } while (-2 * y < x * x);
+        return negative ? x - TAIL : TAIL - x;
+    }
+
+    // Returns a random real number from a standard gaussian distribution, using
+    // the same polar method as StdRandom. Slower than gaussian(); kept to test
+    // that both give the same distribution.
+    public double gaussianPolar() {
+        double r, x, y;
+        do {
+            x = uniform(-1.0, 1.0);
+            y = uniform(-1.0, 1.0);
+            r = x * x + y * y;
+        } while (r >= 1 || r == 0);
+        return x * Math.sqrt(-2 * Math.log(r) / r);
+    }
+
+    // Returns a random real number from a gaussian distribution with mean mu
+    // and standard deviation sigma
+    public double gaussian(double mu, double sigma) {
+        return mu + sigma * gaussian();
+    }
+
+    // Fills a[lo] to a[hi - 1] with random real numbers uniformly in [min, max)
+    public void fillUniform(double[] a, int lo, int hi, double min, double max) {
+        if (!(min < max))
+            throw new IllegalArgumentException("Invalid range: [" + min + ", " + max + ")");
+        checkRange(a.length, lo, hi);
+        double width = max - min;
+        for (int i = lo; i < hi; i++) a[i] = min + random.nextDouble() * width;
+    }
+
+    // Fills a[lo] to a[hi - 1] with random real numbers from a gaussian
+    // distribution with mean 0 and standard deviation sigma
+    public void fillGaussian(double[] a, int lo, int hi, double sigma) {
+        checkRange(a.length, lo, hi);
+        for (int i = lo; i < hi; i++) a[i] = sigma * gaussian();
+    }
+
+    // Fills a[lo] to a[hi - 1] with random real numbers from a gaussian
+    // distribution with mean 0 and standard deviation sigma, rounded to float
+    public void fillGaussian(float[] a, int lo, int hi, double sigma) {
+        checkRange(a.length, lo, hi);
+        for (int i = lo; i < hi; i++) a[i] = (float) (sigma * gaussian());
+    }
+
+    // Throws an IllegalArgumentException unless lo to hi is a range of indices
+    // of an array of the given length
+    private static void checkRange(int length, int lo, int hi) {
+        if (lo < 0 || hi > length || lo > hi)
+            throw new IllegalArgumentException("Invalid range: [" + lo + ", " + hi + ")");
+    }
+
+    // Returns the largest distance between the empirical distributions of two
+    // samples (the two-sample Kolmogorov-Smirnov statistic). Sorts both.
+    private static double distance(double[] a, double[] b) {
+        java.util.Arrays.sort(a);
+        java.util.Arrays.sort(b);
+        double largest = 0.0;
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            double x = Math.min(a[i], b[j]);
+            while (i < a.length && a[i] == x) i++;
+            while (j < b.length && b[j] == x) j++;
+            largest = Math.max(largest, Math.abs((double) i / a.length - (double) j / b.length));
+        }
+        return largest;
+    }
+
+    // Returns the red value of a particle that starts at 1.0 and is varied by
+    // gaussian(0, 0.05) for each of the given number of fades, the way
+    // ParticleBuffer does it, using the polar method if polar is true
+    private double fadedRed(int fades, boolean polar) {
+        float red = 1.0F;
+        for (int k = 0; k < fades; k++) {
+            float rand = (float) (0.05 * (polar ? gaussianPolar() : gaussian()));
+            if (red + rand <= 1.0 && red + rand >= 0.0) red += rand;
+        }
+        return red;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // the same seed gives the same numbers
+        FireworkRandom first = new FireworkRandom(126);
+        FireworkRandom second = new FireworkRandom(126);
+        boolean same = true;
+        for (int i = 0; i < 1000; i++) {
+            if (first.gaussian(0, 0.05) != second.gaussian(0, 0.05)) same = false;
+        }
+        StdOut.println("Same sequence: " + same); // should print true
+
+        // sample mean and standard deviation should be close to mu and sigma
+        FireworkRandom random = new FireworkRandom(1);
+        int n = 100000;
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        for (int i = 0; i < n; i++) {
+            double x = random.gaussian(0, 0.15);
+            sum += x;
+            sumSquares += x * x;
+        }
+        double mean = sum / n;
+        StdOut.println("Mean: " + mean); // should print about 0
+        StdOut.println("Standard deviation: "
+                               + Math.sqrt(sumSquares / n - mean * mean)); // about 0.15
+
+        // uniform values stay in range
+        double min = 1.0;
+        double max = -1.0;
+        for (int i = 0; i < n; i++) {
+            double x = random.uniform(-0.02, 0.02);
+            min = Math.min(min, x);
+            max = Math.max(max, x);
+        }
+        StdOut.println("Uniform range: " + min + " to " + max); // within +-0.02
+
+        // split streams are repeatable too
+        FireworkRandom child1 = new FireworkRandom(126).split();
+        FireworkRandom child2 = new FireworkRandom(126).split();
+        StdOut.println("Same split: " + (child1.uniform() == child2.uniform()));
+        // should print true
+
+        // the ziggurat and the polar method give the same distribution: for
+        // samples of this size the two-sample Kolmogorov-Smirnov distance is
+        // below 1.63 * sqrt(2 / n) with probability 0.99
+        double critical = 1.63 * Math.sqrt(2.0 / n);
+        double[] ziggurat = new double[n];
+        double[] polar = new double[n];
+        random.fillGaussian(ziggurat, 0, n, 1.0);
+        int zigguratTail = 0, polarTail = 0;
+        for (int i = 0; i < n; i++) {
+            polar[i] = random.gaussianPolar();
+            if (Math.abs(ziggurat[i]) > 3) zigguratTail++;
+            if (Math.abs(polar[i]) > 3) polarTail++;
+        }
+        StdOut.println("Beyond 3 sigma: " + zigguratTail + " ziggurat, " + polarTail
+                               + " polar"); // both about 270
+        double d = distance(ziggurat, polar);
+        StdOut.printf("Gaussian distance: %.4f (limit %.4f)%n", d, critical);
+        StdOut.println("Same gaussian distribution: " + (d < critical)); // should print true
+
+        // burst points, varied by gaussian(0, 0.15)
+        for (int i = 0; i < n; i++) {
+            ziggurat[i] = random.gaussian(0, 0.15);
+            polar[i] = 0.15 * random.gaussianPolar();
+        }
+        d = distance(ziggurat, polar);
+        StdOut.println("Same burst distribution: " + (d < critical)); // should print true
+
+        // red values of particles after the 44 fades of a burst, which stick at
+        // 1.0 whenever a variation would take them past it
+        int particles = 20000;
+        critical = 1.63 * Math.sqrt(2.0 / particles);
+        double[] zigguratRed = new double[particles];
+        double[] polarRed = new double[particles];
+        for (int i = 0; i < particles; i++) {
+            zigguratRed[i] = random.fadedRed(44, false);
+            polarRed[i] = random.fadedRed(44, true);
+        }
+        d = distance(zigguratRed, polarRed);
+        StdOut.printf("Color distance: %.4f (limit %.4f)%n", d, critical);
+        StdOut.println("Same color distribution: " + (d < critical)); // should print true
+
+        // the ziggurat is faster (timed after a round to warm up)
+        double zigguratNanos = 0.0, polarNanos = 0.0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int k = 0; k < 20; k++) random.fillGaussian(ziggurat, 0, n, 1.0);
+            zigguratNanos = (System.nanoTime() - start) / (20.0 * n);
+            start = System.nanoTime();
+            for (int k = 0; k < 20; k++)
+                for (int i = 0; i < n; i++) polar[i] = random.gaussianPolar();
+            polarNanos = (System.nanoTime() - start) / (20.0 * n);
+        }
+        StdOut.printf("ns per gaussian: %.1f ziggurat, %.1f polar%n",
+                      zigguratNanos, polarNanos);
+    }
+}
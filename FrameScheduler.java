@@ -0,0 +1,165 @@
+/* This file keeps firework animations moving at the same speed no matter how
+   long drawing takes. Physics is advanced in fixed steps of STEP_MS
+   milliseconds. Each frame asks the scheduler how many steps are due: if the
+   frame finished early the scheduler sleeps only for the rest of the step, and
+   if the frame ran long it returns several steps so the physics catches up
+   with the clock (and with the music) instead of slowing the show down. An
+   unpaced scheduler never sleeps and always returns one step, which lets a
+   headless show run as fast as the machine allows. Steps dropped after a
+   stall too long to catch up are counted, so a show can still keep its
+   launches in time with the music. */
+
+public class FrameScheduler {
+    // milliseconds simulated by one physics step, the same as the old pause
+    public static final int STEP_MS = 30;
+    // most physics steps run in one frame before the scheduler gives up on
+    // catching up, so one very long stall cannot freeze the screen
+    private static final int MAX_CATCH_UP = 5;
+
+    private final long stepNanos; // length of one physics step in nanoseconds
+    private final boolean paced; // whether frames wait for the clock
+    private long nextStep; // time at which the next physics step is due
+    private long skipped; // steps dropped because catching up was capped
+    private long lastReturn; // time stepsDue last returned
+    private long busyNanos; // time the last frame worked before calling stepsDue
+    private boolean timed; // whether a whole frame has been timed yet
+
+    // Creates a scheduler that steps physics every STEP_MS milliseconds,
+    // starting the clock now
+    public FrameScheduler() {
+        this(STEP_MS);
+    }
+
+    // Creates a scheduler that steps physics every stepMillis milliseconds,
+    // starting the clock now
+    public FrameScheduler(int stepMillis) {
+        this(stepMillis, true);
+    }
+
+    // Creates a scheduler with the given step length that waits for the clock
+    // only if paced is true
+    private FrameScheduler(int stepMillis, boolean paced) {
+        if (stepMillis <= 0)
+            throw new IllegalArgumentException("Step length must be positive");
+        stepNanos = stepMillis * 1000000L;
+        this.paced = paced;
+        nextStep = System.nanoTime() + stepNanos;
+    }
+
+    // Returns a scheduler that runs one physics step per frame without waiting
+    public static FrameScheduler unpaced() {
+        return new FrameScheduler(STEP_MS, false);
+    }
+
+    // Waits until at least one physics step is due and returns the number of
+    // steps that are due, which is more than one when the last frame ran long
+    public int stepsDue() {
+        long now = System.nanoTime();
+        if (lastReturn != 0) {
+            busyNanos = now - lastReturn;
+            timed = true;
+        }
+        if (!paced) {
+            lastReturn = now;
+            return 1;
+        }
+        // sleep only for the time left in the frame budget
+        if (now < nextStep) {
+            long start = FrameStats.start();
+            sleep(nextStep - now);
+            FrameStats.stop(FrameStats.WAIT, start);
+            now = System.nanoTime();
+        }
+
+        // one step for the deadline that was reached plus one for every whole
+        // step that has gone by since
+        long steps = 1 + (now - nextStep) / stepNanos;
+        lastReturn = now;
+        if (steps > MAX_CATCH_UP) {
+            // too far behind: run the most steps allowed and restart the clock
+            skipped += steps - MAX_CATCH_UP;
+            nextStep = now + stepNanos;
+            return MAX_CATCH_UP;
+        }
+        nextStep += steps * stepNanos;
+        return (int) steps;
+    }
+
+    // Returns the time in nanoseconds the last frame worked, from the time
+    // stepsDue returned until it was called again, not counting any waiting
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    // Returns true once a frame has been timed, from one return of stepsDue
+    // to the next call, so that getBusyNanos has a value
+    public boolean hasTimedFrame() {
+        return timed;
+    }
+
+    // Returns the number of due steps that were dropped instead of run since
+    // the scheduler started
+    public long getSkippedSteps() {
+        return skipped;
+    }
+
+    // Sleeps for the given number of nanoseconds
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // keep the interrupt for the caller
+        }
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        FrameScheduler clock = new FrameScheduler();
+
+        // fast frames: one step per frame, about STEP_MS apart
+        long start = System.nanoTime();
+        int steps = 0;
+        for (int i = 0; i < 10; i++) steps += clock.stepsDue();
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+        StdOut.println("Steps: " + steps); // should print 10
+        StdOut.println("Elapsed ms: " + elapsed); // should print about 300
+
+        // a slow frame of 105 ms, starting right after a step, is made up for
+        // with the step that was due and the two whole steps missed since
+        clock.stepsDue(); // catches up on the time spent printing
+        clock.stepsDue(); // waits for the next step
+        try {
+            Thread.sleep(105);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        StdOut.println("Catch-up steps: " + clock.stepsDue()); // should print 3
+
+        // a stall longer than the catch-up limit runs the limit and moves on;
+        // 1020 ms after the catch-up lands halfway between steps, with 34 due
+        try {
+            Thread.sleep(1020);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        StdOut.println("Capped steps: " + clock.stepsDue()); // should print 5
+        StdOut.println("Skipped steps: " + clock.getSkippedSteps()); // should print 29
+
+        // an unpaced scheduler never waits
+        FrameScheduler unpaced = unpaced();
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) unpaced.stepsDue();
+        elapsed = (System.nanoTime() - start) / 1000000L;
+        StdOut.println("Unpaced ms: " + elapsed); // should print about 0
+
+        // busy time is known only once a whole frame has been timed
+        FrameScheduler fresh = unpaced();
+        fresh.stepsDue();
+        StdOut.println("Timed after one call: " + fresh.hasTimedFrame()); // should print false
+        fresh.stepsDue();
+        StdOut.println("Timed after two calls: " + fresh.hasTimedFrame()); // should print true
+    }
+}
@@ -0,0 +1,319 @@
+/* This file measures where the time of every frame goes. Each phase of a
+   frame (moving particles, fading them, drawing, clearing to the background,
+   showing the frame, starting sounds, and waiting for the clock) is timed and
+   added up over the frame, and when the frame is shown the totals are
+   recorded in histograms together with the frame time, the number of
+   fireworks and particles drawn, and the bytes allocated. A histogram keeps
+   counts in buckets that grow by an eighth, so recording costs a few
+   instructions and never allocates, and percentiles are within 12.5%.
+
+   Instrumentation is off unless the program is started with
+   -Dfireworks.stats=true (or -Dfireworks.hud=true, which also draws the
+   numbers over the show). ENABLED is a constant, so when it is off the
+   timing calls in the hot paths are compiled away. When it is on, the
+   statistics can be read through JMX as fireworks:type=FrameStats, and at the
+   end of every show they are written to the file named by
+   -Dfireworks.stats.file (frame-stats.csv by default, or JSON if the name
+   ends in .json). */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class FrameStats implements FrameStatsMBean {
+    // true if frames are measured at all
+    public static final boolean ENABLED = Boolean.getBoolean("fireworks.stats")
+            || Boolean.getBoolean("fireworks.hud");
+    // true if the numbers are drawn over the show
+    public static final boolean HUD = Boolean.getBoolean("fireworks.hud");
+
+    // timed phases of a frame, in nanoseconds
+    public static final int MOVE = 0; // moving particles
+    public static final int FADE = 1; // fading particles and varying colors
+    public static final int DRAW = 2; // drawing particles
+    public static final int CLEAR = 3; // clearing to the background
+    public static final int SHOW = 4; // showing the finished frame
+    public static final int AUDIO = 5; // starting sounds
+    public static final int WAIT = 6; // waiting for the clock
+    private static final int PHASES = 7;
+    // other values recorded once per frame
+    private static final int FRAME = 7; // time from one shown frame to the next
+    private static final int FIREWORKS = 8; // fireworks drawn
+    private static final int PARTICLES = 9; // particles drawn
+    private static final int ALLOCATED = 10; // bytes allocated by the frame loop
+    private static final String[] NAMES = {
+            "move_ns", "fade_ns", "draw_ns", "clear_ns", "show_ns", "audio_ns",
+            "wait_ns", "frame_ns", "fireworks", "particles", "allocated_bytes"
+    };
+
+    // one histogram for every value in NAMES
+    private static final Histogram[] histograms = new Histogram[NAMES.length];
+    // phase totals and counts of the frame being made
+    private static final long[] current = new long[NAMES.length];
+    // values of the last frame recorded, for the HUD
+    private static final long[] last = new long[NAMES.length];
+    // reads how many bytes a thread has allocated
+    private static final ThreadMXBean threads =
+            ENABLED ? ManagementFactory.getThreadMXBean() : null;
+    private static long lastFrameEnd; // time the last frame was shown
+    private static long lastAllocated; // bytes the thread had allocated then
+
+    static {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new Histogram();
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        new FrameStats(), new ObjectName("fireworks:type=FrameStats"));
+            }
+            catch (JMException e) {
+                // statistics still work without JMX
+            }
+        }
+    }
+
+    // Counts of values in buckets that grow by an eighth. Values below 8 have
+    // a bucket each; above that, every power of two is cut into 8 buckets.
+    private static class Histogram {
+        private static final int BUCKETS = 8 * 62;
+        private final long[] counts = new long[BUCKETS];
+        private long count, sum, max; // number, total, and largest of the values
+
+        // Adds a value
+        private void record(long value) {
+            if (value < 0) value = 0;
+            counts[bucket(value)]++;
+            count++;
+            sum += value;
+            if (value > max) max = value;
+        }
+
+        // Returns the bucket of a value
+        private static int bucket(long value) {
+            if (value < 8) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 3)) & 7;
+            return (exponent - 2) * 8 + sub;
+        }
+
+        // Returns the smallest value that falls in a bucket
+        private static long lowest(int bucket) {
+            if (bucket < 8) return bucket;
+            int exponent = bucket / 8 + 2;
+            return (8L + bucket % 8) << (exponent - 3);
+        }
+
+        // Returns the value below which the given fraction of values fall
+        private long percentile(double fraction) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts[b];
+                if (seen >= Math.max(1, rank)) return Math.min(max, lowest(b));
+            }
+            return max;
+        }
+
+        // Returns the mean of the values
+        private double mean() {
+            if (count == 0) return 0;
+            return sum / (double) count;
+        }
+
+        // Forgets every value
+        private void reset() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+    }
+
+    // Returns the time to pass to stop, or 0 if instrumentation is off
+    public static long start() {
+        if (!ENABLED) return 0;
+        return System.nanoTime();
+    }
+
+    // Adds the time since start to a phase of the current frame
+    public static void stop(int phase, long start) {
+        if (!ENABLED) return;
+        current[phase] += System.nanoTime() - start;
+    }
+
+    // Counts a firework and its particles as drawn in the current frame
+    public static void drawn(int particles) {
+        if (!ENABLED) return;
+        current[FIREWORKS]++;
+        current[PARTICLES] += particles;
+    }
+
+    // Records the current frame once it has been shown and starts the next
+    public static void endFrame() {
+        if (!ENABLED) return;
+        long now = System.nanoTime();
+        long allocated = allocatedBytes();
+        if (lastFrameEnd != 0) {
+            current[FRAME] = now - lastFrameEnd;
+            current[ALLOCATED] = allocated - lastAllocated;
+            for (int i = 0; i < NAMES.length; i++) {
+                histograms[i].record(current[i]);
+                last[i] = current[i];
+            }
+        }
+        lastFrameEnd = now;
+        lastAllocated = allocated;
+        Arrays.fill(current, 0);
+    }
+
+    // Returns the bytes allocated by this thread so far, or 0 if the JVM
+    // cannot tell
+    private static long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        return 0;
+    }
+
+    // Returns the lines of the on-screen display for the last frame
+    public static String[] hudLines() {
+        Histogram frame = histograms[FRAME];
+        return new String[] {
+                String.format(Locale.ROOT, "frame %.1f ms  p99 %.1f ms",
+                              last[FRAME] / 1e6, frame.percentile(0.99) / 1e6),
+                String.format(Locale.ROOT,
+                              "move %.1f  fade %.1f  draw %.1f  clear %.1f  show %.1f"
+                                      + "  audio %.1f  wait %.1f ms",
+                              last[MOVE] / 1e6, last[FADE] / 1e6, last[DRAW] / 1e6,
+                              last[CLEAR] / 1e6, last[SHOW] / 1e6, last[AUDIO] / 1e6,
+                              last[WAIT] / 1e6),
+                String.format(Locale.ROOT, "fireworks %d  particles %d  alloc %d KB",
+                              last[FIREWORKS], last[PARTICLES], last[ALLOCATED] / 1024)
+        };
+    }
+
+    // Writes every histogram as one CSV row: name, count, mean, p50, p95,
+    // p99, and max
+    public static void writeCsv(PrintWriter out) {
+        out.println("metric,count,mean,p50,p95,p99,max");
+        for (int i = 0; i < NAMES.length; i++) {
+            Histogram h = histograms[i];
+            out.printf(Locale.ROOT, "%s,%d,%.1f,%d,%d,%d,%d%n", NAMES[i], h.count, h.mean(),
+                       h.percentile(0.5), h.percentile(0.95), h.percentile(0.99), h.max);
+        }
+    }
+
+    // Writes every histogram as a JSON object keyed by metric name
+    public static void writeJson(PrintWriter out) {
+        out.println("{");
+        for (int i = 0; i < NAMES.length; i++) {
+            Histogram h = histograms[i];
+            out.printf(Locale.ROOT, "  \"%s\": {\"count\": %d, \"mean\": %.1f, \"p50\": %d,"
+                               + " \"p95\": %d, \"p99\": %d, \"max\": %d}%s%n",
+                       NAMES[i], h.count, h.mean(), h.percentile(0.5),
+                       h.percentile(0.95), h.percentile(0.99), h.max,
+                       i < NAMES.length - 1 ? "," : "");
+        }
+        out.println("}");
+    }
+
+    // Writes the statistics to the file named by -Dfireworks.stats.file, as
+    // JSON if its name ends in .json and as CSV otherwise
+    public static void dump() {
+        if (!ENABLED) return;
+        String fileName = System.getProperty("fireworks.stats.file", "frame-stats.csv");
+        try (PrintWriter out = new PrintWriter(fileName, "UTF-8")) {
+            if (fileName.endsWith(".json")) writeJson(out);
+            else writeCsv(out);
+        }
+        catch (IOException e) {
+            System.err.println("Could not write frame statistics to " + fileName
+                                       + ": " + e.getMessage());
+        }
+    }
+
+    // Forgets every frame recorded so far
+    public static void clear() {
+        for (int i = 0; i < histograms.length; i++) histograms[i].reset();
+        Arrays.fill(current, 0);
+        Arrays.fill(last, 0);
+        lastFrameEnd = 0;
+    }
+
+    // Returns the number of frames recorded
+    public long getFrames() {
+        return histograms[FRAME].count;
+    }
+
+    // Returns the mean frame time in milliseconds
+    public double getFrameMeanMillis() {
+        return histograms[FRAME].mean() / 1e6;
+    }
+
+    // Returns the 99th percentile frame time in milliseconds
+    public double getFrameP99Millis() {
+        return histograms[FRAME].percentile(0.99) / 1e6;
+    }
+
+    // Returns the longest frame time in milliseconds
+    public double getFrameMaxMillis() {
+        return histograms[FRAME].max / 1e6;
+    }
+
+    // Returns the number of fireworks drawn in the last frame
+    public long getFireworks() {
+        return last[FIREWORKS];
+    }
+
+    // Returns the number of particles drawn in the last frame
+    public long getParticles() {
+        return last[PARTICLES];
+    }
+
+    // Returns the mean number of bytes allocated per frame
+    public double getAllocatedBytesPerFrame() {
+        return histograms[ALLOCATED].mean();
+    }
+
+    // Returns one line per timed phase with its mean and 99th percentile
+    public String[] getPhases() {
+        String[] lines = new String[PHASES];
+        for (int i = 0; i < PHASES; i++) {
+            lines[i] = String.format(Locale.ROOT, "%s mean %.3f ms, p99 %.3f ms",
+                                     NAMES[i].substring(0, NAMES[i].length() - 3),
+                                     histograms[i].mean() / 1e6,
+                                     histograms[i].percentile(0.99) / 1e6);
+        }
+        return lines;
+    }
+
+    // Forgets every frame recorded so far
+    public void reset() {
+        clear();
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // buckets keep values within an eighth
+        Histogram h = new Histogram();
+        for (long v = 1; v <= 1000000; v++) h.record(v);
+        StdOut.println("p50: " + h.percentile(0.5)); // should print about 500000
+        StdOut.println("p99: " + h.percentile(0.99)); // should print about 990000
+        StdOut.println("max: " + h.max); // should print 1000000
+
+        if (!ENABLED) {
+            StdOut.println("Run with -Dfireworks.stats=true to time a show");
+            return;
+        }
+        // time a headless show and print the statistics as CSV
+        new ShowEngine(new HeadlessRenderer(), 126, false).play("FourthOfJuly.txt");
+        PrintWriter out = new PrintWriter(System.out);
+        writeCsv(out);
+        out.flush();
+        for (String line : hudLines()) StdOut.println(line);
+    }
+}
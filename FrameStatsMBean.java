@@ -0,0 +1,31 @@
+/* This file lists the frame statistics that FrameStats offers through JMX,
+   so a show can be watched from JConsole or VisualVM while it plays. */
+
+public interface FrameStatsMBean {
+    // Returns the number of frames recorded
+    long getFrames();
+
+    // Returns the mean frame time in milliseconds
+    double getFrameMeanMillis();
+
+    // Returns the 99th percentile frame time in milliseconds
+    double getFrameP99Millis();
+
+    // Returns the longest frame time in milliseconds
+    double getFrameMaxMillis();
+
+    // Returns the number of fireworks drawn in the last frame
+    long getFireworks();
+
+    // Returns the number of particles drawn in the last frame
+    long getParticles();
+
+    // Returns the mean number of bytes allocated per frame
+    double getAllocatedBytesPerFrame();
+
+    // Returns one line per timed phase with its mean and 99th percentile
+    String[] getPhases();
+
+    // Forgets every frame recorded so far
+    void reset();
+}
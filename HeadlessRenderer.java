@@ -0,0 +1,80 @@
+/* This file runs a firework show with no window and no audio. Instead of
+   drawing, it counts frames, particles, and sounds, and folds the state of
+   every drawn particle into a checksum, so two runs of a show can be compared
+   and a show's cost can be measured on a server. */
+
+public class HeadlessRenderer implements Renderer {
+    private long frames; // number of frames displayed
+    private long particles; // number of particles drawn over all frames
+    private long clears; // number of background clears
+    private long trails; // number of frames started with trails
+    private long sounds; // number of sounds played
+    private long checksum; // hash of every particle drawn
+
+    // Counts a background clear
+    public void clear(String image) {
+        clears++;
+    }
+
+    // Counts a frame started with trails
+    public void trail(String image) {
+        trails++;
+    }
+
+    // Counts the particles and mixes their positions and colors into the checksum
+    public void draw(ParticleBuffer buffer) {
+        for (int i = 0; i < buffer.size(); i++) {
+            checksum = 31 * checksum + Double.doubleToLongBits(buffer.getPx(i));
+            checksum = 31 * checksum + Double.doubleToLongBits(buffer.getPy(i));
+            checksum = 31 * checksum + ColorCache.key(buffer.getRed(i), buffer.getGreen(i),
+                                                      buffer.getBlue(i),
+                                                      buffer.getColorAlpha(i));
+        }
+        particles += buffer.size();
+    }
+
+    // Counts a displayed frame
+    public void show() {
+        frames++;
+    }
+
+    // Counts a sound
+    public void play(String sound) {
+        sounds++;
+    }
+
+    // Ignores quality levels, so every run draws exactly the same particles
+    public void setQuality(int level) {
+    }
+
+    // Returns the number of frames displayed
+    public long getFrames() {
+        return frames;
+    }
+
+    // Returns the number of particles drawn over all frames
+    public long getParticles() {
+        return particles;
+    }
+
+    // Returns the number of background clears
+    public long getClears() {
+        return clears;
+    }
+
+    // Returns the number of frames started with trails
+    public long getTrails() {
+        return trails;
+    }
+
+    // Returns the number of sounds played
+    public long getSounds() {
+        return sounds;
+    }
+
+    // Returns the hash of every particle drawn, which is the same for two runs
+    // of a show only if every frame was the same
+    public long getChecksum() {
+        return checksum;
+    }
+}
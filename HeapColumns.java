@@ -0,0 +1,89 @@
+/* This file keeps the columns of a ParticleBuffer as arrays on the Java heap,
+   one array per attribute. The arrays hold every particle of the buffer, so
+   they are handed to the buffer's loops as they are, and nothing is copied. */
+
+public class HeapColumns implements ParticleColumns {
+    private final double[][] doubles; // columns of doubles
+    private final float[][] floats; // columns of floats
+
+    // Creates columns with room for the given number of particles
+    public HeapColumns(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity must be non-negative");
+        doubles = new double[ParticleBuffer.DOUBLES][capacity];
+        floats = new float[ParticleBuffer.FLOATS][capacity];
+    }
+
+    // Returns the number of particles the columns hold
+    public int capacity() {
+        return doubles[0].length;
+    }
+
+    // Returns the value of particle i in a column of doubles
+    public double getDouble(int column, int i) {
+        return doubles[column][i];
+    }
+
+    // Sets the value of particle i in a column of doubles
+    public void setDouble(int column, int i, double value) {
+        doubles[column][i] = value;
+    }
+
+    // Returns the value of particle i in a column of floats
+    public float getFloat(int column, int i) {
+        return floats[column][i];
+    }
+
+    // Sets the value of particle i in a column of floats
+    public void setFloat(int column, int i, float value) {
+        floats[column][i] = value;
+    }
+
+    // Returns the whole column of doubles
+    public double[] doubles(int column, int lo, int hi) {
+        return doubles[column];
+    }
+
+    // Returns the whole column of floats
+    public float[] floats(int column, int lo, int hi) {
+        return floats[column];
+    }
+
+    // Returns lo, since the arrays hold every particle at its own index
+    public int start(int lo) {
+        return lo;
+    }
+
+    // Does nothing, since the array is the column itself
+    public void putDoubles(int column, double[] values, int lo, int hi) {
+    }
+
+    // Does nothing, since the array is the column itself
+    public void putFloats(int column, float[] values, int lo, int hi) {
+    }
+
+    // Returns null, since the columns are on the heap
+    public ParticleArena getArena() {
+        return null;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        HeapColumns columns = new HeapColumns(10);
+        columns.setDouble(ParticleBuffer.PX, 3, 0.5);
+        columns.setFloat(ParticleBuffer.ALPHA, 3, 0.25F);
+        StdOut.println("Capacity: " + columns.capacity()); // should print 10
+        StdOut.println("X Position: " + columns.getDouble(ParticleBuffer.PX, 3));
+        // should print 0.5
+
+        // a chunk is the column itself, with every particle at its own index
+        double[] px = columns.doubles(ParticleBuffer.PX, 2, 5);
+        float[] alpha = columns.floats(ParticleBuffer.ALPHA, 2, 5);
+        int start = columns.start(2);
+        StdOut.println("From the chunk: " + px[start + 1] + " " + alpha[start + 1]);
+        // should print 0.5 0.25
+        px[start + 1] = 2;
+        StdOut.println("Changed in place: " + columns.getDouble(ParticleBuffer.PX, 3));
+        // should print 2.0
+    }
+}
@@ -0,0 +1,233 @@
+/* This file turns key presses and mouse clicks in the StdDraw window into a
+   queue of events, so a menu can wait for input instead of redrawing and
+   polling in a loop that keeps a core busy. Every press is queued once, so
+   a click that is held down can no longer be seen twice by the next menu.
+
+   StdDraw hands its events to any DrawListener added with addListener().
+   The listener is made and added by reflection, since older versions of
+   StdDraw have neither. With those versions, listeners are added straight
+   to StdDraw's private window and picture, found by reflection the way
+   StdDrawCanvas finds its drawing surface. If neither works, waiting falls
+   back to asking StdDraw for typed keys and mouse presses every POLL_MS
+   milliseconds, sleeping in between. Keys are reported by key code, which
+   for letters and digits is the upper-case character, so 'Z' and '1' work
+   either way. */
+
+import java.awt.Component;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JFrame;
+
+public class InputEvents {
+    // milliseconds between checks when StdDraw cannot send events
+    private static final int POLL_MS = 20;
+
+    // events not yet taken
+    private static final LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<Event>();
+    private static boolean started; // whether start() has run
+    private static boolean listening; // true if StdDraw sends events itself
+    private static boolean wasPressed; // mouse state at the last poll
+
+    // A key press or mouse click
+    public static class Event {
+        private final int key; // key code, or -1 for a click
+        private final double x, y; // where the mouse was clicked
+
+        // Creates an event from its key code and click position
+        private Event(int key, double x, double y) {
+            this.key = key;
+            this.x = x;
+            this.y = y;
+        }
+
+        // Returns true if the event is a press of the given key
+        public boolean isKey(int key) {
+            return this.key == key;
+        }
+
+        // Returns true if the event is a mouse click
+        public boolean isClick() {
+            return key < 0;
+        }
+
+        // Returns true if the event is a click inside the given rectangle of
+        // StdDraw coordinates
+        public boolean isClickIn(double left, double right, double bottom, double top) {
+            return isClick() && x >= left && x <= right && y >= bottom && y <= top;
+        }
+
+        // Returns the x-coordinate of a click
+        public double getX() {
+            return x;
+        }
+
+        // Returns the y-coordinate of a click
+        public double getY() {
+            return y;
+        }
+    }
+
+    // Starts taking events from StdDraw. Call once the canvas is set up.
+    public static synchronized void start() {
+        if (started) return;
+        started = true;
+        listening = listen() || listenToWindow();
+    }
+
+    // Adds a DrawListener to StdDraw that queues every key press and mouse
+    // press. Returns false if this version of StdDraw has no listeners.
+    private static boolean listen() {
+        try {
+            Class<?> type = Class.forName("DrawListener");
+            Object listener = Proxy.newProxyInstance(
+                    type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.equals("keyPressed"))
+                            queue.add(new Event((Integer) args[0], 0, 0));
+                        else if (name.equals("mousePressed"))
+                            queue.add(new Event(-1, (Double) args[0], (Double) args[1]));
+                        else if (name.equals("hashCode")) return System.identityHashCode(proxy);
+                        else if (name.equals("equals")) return proxy == args[0];
+                        else if (name.equals("toString")) return "InputEvents listener";
+                        return null;
+                    });
+            StdDraw.class.getMethod("addListener", type).invoke(null, listener);
+            return true;
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Adds key and mouse listeners to StdDraw's window and the picture it
+    // draws in. Returns false if they cannot be reached.
+    private static boolean listenToWindow() {
+        try {
+            Field field = StdDraw.class.getDeclaredField("frame");
+            field.setAccessible(true);
+            JFrame frame = (JFrame) field.get(null);
+            // StdDraw's own conversions from pixels to its coordinates
+            Method userX = StdDraw.class.getDeclaredMethod("userX", double.class);
+            Method userY = StdDraw.class.getDeclaredMethod("userY", double.class);
+            userX.setAccessible(true);
+            userY.setAccessible(true);
+            if (frame == null) return false;
+
+            frame.addKeyListener(new KeyAdapter() {
+                public void keyPressed(KeyEvent e) {
+                    queue.add(new Event(e.getKeyCode(), 0, 0));
+                }
+            });
+            Component picture = frame.getContentPane();
+            picture.addMouseListener(new MouseAdapter() {
+                public void mousePressed(MouseEvent e) {
+                    try {
+                        queue.add(new Event(-1, (Double) userX.invoke(null, (double) e.getX()),
+                                            (Double) userY.invoke(null, (double) e.getY())));
+                    }
+                    catch (ReflectiveOperationException ex) {
+                        // the click is lost, but the program keeps running
+                    }
+                }
+            });
+            return true;
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Returns true if StdDraw sends events, false if they are polled
+    public static synchronized boolean isListening() {
+        start();
+        return listening;
+    }
+
+    // Queues any key typed or mouse press begun since the last poll
+    private static void poll() {
+        while (StdDraw.hasNextKeyTyped())
+            queue.add(new Event(Character.toUpperCase(StdDraw.nextKeyTyped()), 0, 0));
+        boolean pressed = StdDraw.isMousePressed();
+        if (pressed && !wasPressed) queue.add(new Event(-1, StdDraw.mouseX(), StdDraw.mouseY()));
+        wasPressed = pressed;
+    }
+
+    // Waits until there is an event and returns it
+    public static Event take() {
+        Event event = null;
+        while (event == null) event = poll(Long.MAX_VALUE);
+        return event;
+    }
+
+    // Waits at most the given number of milliseconds for an event and returns
+    // it, or returns null if there was none
+    public static Event poll(long timeoutMillis) {
+        try {
+            if (isListening()) return queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            long end = System.currentTimeMillis() + Math.min(timeoutMillis, Long.MAX_VALUE / 2);
+            while (true) {
+                synchronized (InputEvents.class) {
+                    poll();
+                }
+                Event event = queue.poll();
+                long left = end - System.currentTimeMillis();
+                if (event != null || left <= 0) return event;
+                Thread.sleep(Math.min(POLL_MS, left));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // Forgets every event not yet taken, such as clicks made while a firework
+    // was playing
+    public static synchronized void clear() {
+        if (!listening) {
+            while (StdDraw.hasNextKeyTyped()) StdDraw.nextKeyTyped();
+            wasPressed = StdDraw.isMousePressed();
+        }
+        queue.clear();
+    }
+
+    // Adds an event as if it came from StdDraw, for testing
+    public static void press(int key) {
+        queue.add(new Event(key, 0, 0));
+    }
+
+    // Adds a click as if it came from StdDraw, for testing
+    public static void click(double x, double y) {
+        queue.add(new Event(-1, x, y));
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        StdOut.println("StdDraw sends events: " + isListening());
+
+        press('Z');
+        click(1.0, 5.0);
+        Event key = take();
+        Event click = take();
+        StdOut.println("Key Z: " + key.isKey('Z')); // should print true
+        StdOut.println("Click in menu box: " + click.isClickIn(-8, 8, 4, 8));
+        // should print true
+
+        // waiting with nothing to take returns after the timeout
+        long start = System.currentTimeMillis();
+        Event none = poll(200);
+        StdOut.println("Nothing after " + (System.currentTimeMillis() - start)
+                               + " ms: " + (none == null)); // about 200 ms, true
+
+        press('1');
+        clear();
+        StdOut.println("Cleared: " + (poll(0) == null)); // should print true
+    }
+}
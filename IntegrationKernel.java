@@ -0,0 +1,35 @@
+/* This file describes the loops that move and fade particles stored in
+   primitive arrays. ParticleBuffer runs every time step through a kernel, so
+   the same loops can be run one element at a time by ScalarKernel or several
+   elements per instruction by VectorKernel, which uses the incubating Java
+   Vector API. Both kernels do exactly the same arithmetic in the same order
+   for every element, so they give identical results, and load picks the
+   vector kernel only if the JVM was started with the Vector API module. */
+
+public interface IntegrationKernel {
+    // Adds each acceleration to its velocity and then each new velocity to
+    // its position, for the elements from lo up to, but not including, hi
+    void integrate(double[] p, double[] v, double[] a, int lo, int hi);
+
+    // Multiplies the elements from lo up to, but not including, hi by factor
+    void scale(float[] values, float factor, int lo, int hi);
+
+    // Returns the name of the kernel
+    String name();
+
+    // Returns the vector kernel if the JVM was started with
+    // --add-modules jdk.incubator.vector and -Dfireworks.vector is not false,
+    // and the scalar kernel otherwise
+    static IntegrationKernel load() {
+        if (!"false".equals(System.getProperty("fireworks.vector"))) {
+            try {
+                return (IntegrationKernel) Class.forName("VectorKernel")
+                                                .getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException | LinkageError e) {
+                // no Vector API or no VectorKernel class: use plain loops
+            }
+        }
+        return new ScalarKernel();
+    }
+}
@@ -42,8 +42,9 @@ public class Particle {
         if (b + rand3 <= 1.0 && b + rand3 >= 0.0) this.b = b + rand3;
         else this.b = b;
 
-        // creates color with rgb values between 0 and 1, and alpha value for opacity
-        this.color = new Color(this.r, this.g, this.b, this.a);
+        // looks up shared color with rgb values between 0 and 1, and alpha value
+        // for opacity
+        this.color = ColorCache.get(this.r, this.g, this.b, this.a);
     }
 
     // Updates x- and y-positions according to the velocity and acceleration.
@@ -57,7 +58,8 @@ public class Particle {
     }
 
     /* Updates color to make it more transparent using the alpha feature of
-    the Color constructor from the Color API
+    the Color API, reusing a shared Color from ColorCache instead of
+    constructing a new one
      */
     public void updateColor(double decrementer) {
         // check that the decrementer is valid to approach transparency in color
@@ -76,7 +78,7 @@ public class Particle {
         if (g + rand2 <= 1.0 && g + rand2 >= 0.0) g += rand2;
         float rand3 = (float) StdRandom.gaussian(0, 0.05);
         if (b + rand3 <= 1.0 && b + rand3 >= 0.0) b += rand3;
-        color = new Color(r, g, b, a); // reinitialize color
+        color = ColorCache.get(r, g, b, a); // look up shared color
     }
 
     // Draws filled circle using instance variables for size, position, and color
@@ -0,0 +1,44 @@
+/* This file describes an arena: memory outside the Java heap that holds the
+   particle buffers of one group of fireworks, such as an entry of a show and
+   every stage that later breaks out of it. Buffers are taken from the arena
+   one at a time but never freed one at a time; once every buffer taken has
+   been released, the whole arena is freed at once. The particles of a huge
+   show then never fill the heap, so the heap stays small and the same size
+   however big the show is, and the garbage collector has nothing to copy.
+
+   Arenas are made by OffHeapArena, which uses the incubating Foreign Memory
+   API. It lives in its own directory because it only compiles and runs with
+   --add-modules jdk.incubator.foreign, the way VectorKernel does, so open
+   finds it by name and returns null when it is not there. The ParticlePool
+   opens an arena for each group only when the program is started with
+   -Dfireworks.offheap=true; otherwise every buffer lives on the heap. */
+
+public interface ParticleArena {
+    // Returns an empty buffer kept in the arena, with room for the given
+    // number of particles, that takes its color variation from the given
+    // random stream. Throws an IllegalStateException if the arena was freed.
+    ParticleBuffer allocate(int capacity, FireworkRandom random);
+
+    // Hands a buffer taken from the arena back, and frees the arena once every
+    // buffer taken from it has been handed back. The buffer must not be used
+    // again.
+    void release(ParticleBuffer buffer);
+
+    // Returns true once the arena's memory has been freed
+    boolean isFreed();
+
+    // Returns the number of bytes of particles the arena holds
+    long bytes();
+
+    // Returns a new arena outside the heap if the JVM was started with
+    // --add-modules jdk.incubator.foreign, and null otherwise
+    static ParticleArena open() {
+        try {
+            return (ParticleArena) Class.forName("OffHeapArena")
+                                        .getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null; // no Foreign Memory API or no OffHeapArena class
+        }
+    }
+}
@@ -0,0 +1,472 @@
+/* This file stores all the particles of one firework in columns of
+   primitives (one column per attribute) instead of one Particle object per
+   particle. The motion and fading of every particle are done by whole-buffer
+   functions that walk the columns front to back, so a firework with thousands
+   of particles is updated in a few tight loops over contiguous memory. Colors
+   are kept as primitive values and looked up in the shared ColorCache by the
+   renderer, so fading allocates nothing.
+
+   The buffer is cut into chunks of CHUNK particles. Each chunk has its own
+   random stream, split from the buffer's stream when the chunk is first
+   filled, so large buffers can be stepped and faded by ParticleWorkers on
+   many threads and still give exactly the same result for the same seed.
+
+   The loops that move particles and fade them are run by an
+   IntegrationKernel, which is the VectorKernel when the Java Vector API is
+   available and the ScalarKernel otherwise; both give identical results.
+
+   Particles that can no longer be seen are culled: cull() drops the ones that
+   have faded out or left the view for good and moves the rest to the front,
+   so later steps, fades, and draws only touch visible particles. A buffer can
+   be reset and filled again, which lets a ParticlePool hand it to the next
+   firework instead of making a new one.
+
+   Since every particle keeps its acceleration, its motion has a closed
+   form: after n steps its velocity is v + n a and its position is
+   p + n v + n(n + 1)/2 a. advance() and the two-argument fade() use it to
+   jump a whole buffer forward any number of steps in one pass, which is how a
+   show seeks.
+
+   The columns are ParticleColumns: arrays on the Java heap (HeapColumns)
+   unless the buffer was taken from a ParticleArena, which keeps them outside
+   the heap. Every loop asks the columns for the arrays of one chunk at a
+   time, so all the arithmetic is here, and a buffer gives exactly the same
+   results wherever its particles are kept. */
+
+public class ParticleBuffer {
+    // number of particles in one chunk of work
+    public static final int CHUNK = 4096;
+
+    // columns of doubles: positions, velocities, and accelerations in x and
+    // y, and the radius of each particle
+    public static final int PX = 0, PY = 1, VX = 2, VY = 3, AX = 4, AY = 5, SIZE = 6;
+    public static final int DOUBLES = 7; // number of columns of doubles
+    // columns of floats: red, green, and blue values and opacity of color
+    public static final int RED = 0, GREEN = 1, BLUE = 2, ALPHA = 3;
+    public static final int FLOATS = 4; // number of columns of floats
+
+    // runs the move and fade loops for every buffer; volatile because
+    // setKernel may be called while worker threads are updating buffers
+    private static volatile IntegrationKernel kernel = IntegrationKernel.load();
+
+    // room for one color variation per particle of a chunk, for each thread
+    private static final ThreadLocal<float[]> jitter =
+            ThreadLocal.withInitial(() -> new float[CHUNK]);
+
+    private final ParticleColumns columns; // where the particles are kept
+    private int count; // number of particles stored in the buffer
+    private FireworkRandom random; // stream the chunk streams are split from
+    private final FireworkRandom[] streams; // source of color variation per chunk
+
+    // Creates an empty buffer with room for the given number of particles
+    public ParticleBuffer(int capacity) {
+        this(capacity, new FireworkRandom());
+    }
+
+    // Creates an empty buffer with room for the given number of particles that
+    // takes its color variation from the given random stream
+    public ParticleBuffer(int capacity, FireworkRandom random) {
+        this(new HeapColumns(capacity), random);
+    }
+
+    // Creates an empty buffer that keeps its particles in the given columns
+    // and takes its color variation from the given random stream
+    public ParticleBuffer(ParticleColumns columns, FireworkRandom random) {
+        this.columns = columns;
+        streams = new FireworkRandom[(columns.capacity() + CHUNK - 1) / CHUNK];
+        this.random = random;
+    }
+
+    // Empties the buffer so it can be filled again, taking its color
+    // variation from the given random stream as if it were new
+    public void reset(FireworkRandom random) {
+        count = 0;
+        this.random = random;
+    }
+
+    // Adds one particle to the end of the buffer and returns its index. The
+    // color is varied slightly the same way the Particle constructor does it.
+    public int add(double px, double py, double vx, double vy, double ax,
+                   double ay, double size, float r, float g, float b) {
+        if (count == columns.capacity())
+            throw new IllegalStateException("Particle buffer is full");
+        int i = count++;
+        columns.setDouble(PX, i, px);
+        columns.setDouble(PY, i, py);
+        columns.setDouble(VX, i, vx);
+        columns.setDouble(VY, i, vy);
+        columns.setDouble(AX, i, ax);
+        columns.setDouble(AY, i, ay);
+        columns.setDouble(SIZE, i, size);
+        // split one stream for every chunk as it is first used, always in the
+        // same order
+        if (i % CHUNK == 0) streams[i / CHUNK] = this.random.split();
+        FireworkRandom random = streams[i / CHUNK]; // stream of the particle's chunk
+
+        // Standard Deviation of 0.05 to add variation based on gaussian distribution
+        columns.setFloat(ALPHA, i, 1); // initialize alpha 1 (full opacity)
+        float rand1 = (float) random.gaussian(0, 0.05);
+        if (r + rand1 <= 1.0 && r + rand1 >= 0.0) columns.setFloat(RED, i, r + rand1);
+        else columns.setFloat(RED, i, r);
+        float rand2 = (float) random.gaussian(0, 0.05);
+        if (g + rand2 <= 1.0 && g + rand2 >= 0.0) columns.setFloat(GREEN, i, g + rand2);
+        else columns.setFloat(GREEN, i, g);
+        float rand3 = (float) random.gaussian(0, 0.05);
+        if (b + rand3 <= 1.0 && b + rand3 >= 0.0) columns.setFloat(BLUE, i, b + rand3);
+        else columns.setFloat(BLUE, i, b);
+        return i;
+    }
+
+    // Makes every buffer run its loops with the given kernel
+    public static void setKernel(IntegrationKernel kernel) {
+        ParticleBuffer.kernel = kernel;
+    }
+
+    // Returns the kernel every buffer runs its loops with
+    public static IntegrationKernel getKernel() {
+        return kernel;
+    }
+
+    // Returns the number of chunks that hold particles
+    private int chunks() {
+        return (count + CHUNK - 1) / CHUNK;
+    }
+
+    // Returns the index of the first particle of chunk c
+    private static int lo(int c) {
+        return c * CHUNK;
+    }
+
+    // Returns the index just past the last particle of chunk c
+    private int hi(int c) {
+        return Math.min(count, (c + 1) * CHUNK);
+    }
+
+    // Updates positions and velocities of every particle by one time step,
+    // using the same update as Particle.updatePosition()
+    public void step() {
+        int chunks = chunks();
+        if (ParticleWorkers.isParallel(chunks))
+            ParticleWorkers.forEachChunk(chunks, c -> stepChunk(c));
+        else
+            for (int c = 0; c < chunks; c++) stepChunk(c);
+    }
+
+    // Steps the particles of one chunk
+    private void stepChunk(int c) {
+        int lo = lo(c), hi = hi(c);
+        int from = columns.start(lo), to = from + hi - lo; // chunk in the arrays
+        double[] px = columns.doubles(PX, lo, hi), py = columns.doubles(PY, lo, hi);
+        double[] vx = columns.doubles(VX, lo, hi), vy = columns.doubles(VY, lo, hi);
+        double[] ax = columns.doubles(AX, lo, hi), ay = columns.doubles(AY, lo, hi);
+        IntegrationKernel k = kernel; // both axes use the same kernel
+        k.integrate(px, vx, ax, from, to); // updates x-velocity, then x-position
+        k.integrate(py, vy, ay, from, to); // updates y-velocity, then y-position
+        columns.putDoubles(PX, px, lo, hi);
+        columns.putDoubles(PY, py, lo, hi);
+        columns.putDoubles(VX, vx, lo, hi);
+        columns.putDoubles(VY, vy, lo, hi);
+    }
+
+    // Moves every particle by the given number of time steps at once. Gives
+    // the same positions and velocities as calling step() that many times, up
+    // to rounding.
+    public void advance(int steps) {
+        if (steps < 0) throw new IllegalArgumentException("Steps must be non-negative");
+        double n = steps;
+        double rise = n * (n + 1) / 2; // how many times each acceleration adds up
+        for (int c = 0; c < chunks(); c++) {
+            int lo = lo(c), hi = hi(c);
+            int from = columns.start(lo), to = from + hi - lo; // chunk in the arrays
+            double[] px = columns.doubles(PX, lo, hi), py = columns.doubles(PY, lo, hi);
+            double[] vx = columns.doubles(VX, lo, hi), vy = columns.doubles(VY, lo, hi);
+            double[] ax = columns.doubles(AX, lo, hi), ay = columns.doubles(AY, lo, hi);
+            for (int i = from; i < to; i++) {
+                px[i] += n * vx[i] + rise * ax[i];
+                py[i] += n * vy[i] + rise * ay[i];
+                vx[i] += n * ax[i];
+                vy[i] += n * ay[i];
+            }
+            columns.putDoubles(PX, px, lo, hi);
+            columns.putDoubles(PY, py, lo, hi);
+            columns.putDoubles(VX, vx, lo, hi);
+            columns.putDoubles(VY, vy, lo, hi);
+        }
+    }
+
+    // Makes every particle as transparent as calling fade(decrementer) the
+    // given number of times would, and varies its color by as much as those
+    // fades would on average. Many small variations that are dropped when they
+    // would leave the range 0 to 1 add up to one gaussian variation, with the
+    // standard deviation of all of them together, reflected back into range.
+    public void fade(double decrementer, int times) {
+        if (decrementer >= 1 || decrementer == 0)
+            throw new IllegalArgumentException(
+                    "Decrementer must be less than 1 but greater than 0");
+        if (times < 0) throw new IllegalArgumentException("Times must be non-negative");
+        if (times == 0) return;
+
+        float factor = (float) decrementer;
+        double sigma = 0.05 * Math.sqrt(times); // Standard dev of all the fades
+        float[] jitter = ParticleBuffer.jitter.get();
+        for (int c = 0; c < chunks(); c++) {
+            int lo = lo(c), hi = hi(c);
+            int from = columns.start(lo), to = from + hi - lo; // chunk in the arrays
+
+            // particles that start equally opaque end equally opaque, so the
+            // opacity is multiplied out once for each run of equal values
+            float[] alpha = columns.floats(ALPHA, lo, hi);
+            float before = Float.NaN; // opacity last multiplied out
+            float after = 0; // what it became
+            for (int i = from; i < to; i++) {
+                if (alpha[i] != before) {
+                    before = alpha[i];
+                    after = before;
+                    for (int k = 0; k < times && after != 0; k++) after *= factor;
+                }
+                alpha[i] = after;
+            }
+            columns.putFloats(ALPHA, alpha, lo, hi);
+
+            FireworkRandom random = streams[c];
+            for (int color = RED; color <= BLUE; color++) {
+                random.fillGaussian(jitter, 0, hi - lo, sigma);
+                float[] values = columns.floats(color, lo, hi);
+                reflect(values, jitter, from, to);
+                columns.putFloats(color, values, lo, hi);
+            }
+        }
+    }
+
+    // Adds jitter[i - from] to color[i] for i from from up to, but not
+    // including, to, folding values that leave the range 0 to 1 back into it
+    private static void reflect(float[] color, float[] jitter, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float value = Math.abs(color[i] + jitter[i - from]) % 2; // fold at 0 and 2
+            color[i] = value > 1 ? 2 - value : value; // fold at 1
+        }
+    }
+
+    // Makes every particle more transparent and varies its color slightly,
+    // using the same update as Particle.updateColor()
+    public void fade(double decrementer) {
+        // check that the decrementer is valid to approach transparency in color
+        if (decrementer >= 1 || decrementer == 0)
+            throw new IllegalArgumentException(
+                    "Decrementer must be less than 1 but greater than 0");
+        int chunks = chunks();
+        if (ParticleWorkers.isParallel(chunks))
+            ParticleWorkers.forEachChunk(chunks, c -> fadeChunk(c, decrementer));
+        else
+            for (int c = 0; c < chunks; c++) fadeChunk(c, decrementer);
+    }
+
+    // Fades the particles of one chunk using that chunk's random stream
+    private void fadeChunk(int c, double decrementer) {
+        int lo = lo(c), hi = hi(c);
+        int from = columns.start(lo), to = from + hi - lo; // chunk in the arrays
+        float[] alpha = columns.floats(ALPHA, lo, hi);
+        kernel.scale(alpha, (float) decrementer, from, to); // reduces opacity
+        columns.putFloats(ALPHA, alpha, lo, hi);
+
+        // Standard dev: 0.05 for slight variation, drawn for the whole chunk at
+        // once one color at a time
+        FireworkRandom random = streams[c];
+        float[] jitter = ParticleBuffer.jitter.get();
+        for (int color = RED; color <= BLUE; color++) {
+            random.fillGaussian(jitter, 0, hi - lo, 0.05);
+            float[] values = columns.floats(color, lo, hi);
+            vary(values, jitter, from, to);
+            columns.putFloats(color, values, lo, hi);
+        }
+    }
+
+    // Adds jitter[i - from] to color[i] for i from from up to, but not
+    // including, to, unless that would take it out of the range 0 to 1
+    private static void vary(float[] color, float[] jitter, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float rand = jitter[i - from];
+            if (color[i] + rand <= 1.0 && color[i] + rand >= 0.0) color[i] += rand;
+        }
+    }
+
+    // Removes every particle that is more transparent than minAlpha or has
+    // left the square from -view to view for good, keeping the rest in order at
+    // the front of the buffer. Returns the number of particles removed.
+    public int cull(float minAlpha, double view) {
+        int kept = 0;
+        for (int c = 0; c < chunks(); c++) {
+            int lo = lo(c), hi = hi(c);
+            int from = columns.start(lo); // chunk in the arrays
+            float[] alpha = columns.floats(ALPHA, lo, hi);
+            double[] size = columns.doubles(SIZE, lo, hi);
+            double[] px = columns.doubles(PX, lo, hi), py = columns.doubles(PY, lo, hi);
+            double[] vx = columns.doubles(VX, lo, hi), vy = columns.doubles(VY, lo, hi);
+            double[] ax = columns.doubles(AX, lo, hi), ay = columns.doubles(AY, lo, hi);
+            for (int i = lo; i < hi; i++) {
+                int j = from + i - lo; // index of particle i in the arrays
+                if (alpha[j] < minAlpha) continue; // faded out
+                double reach = view + size[j]; // farthest center that still shows
+                if (isLeaving(px[j], vx[j], ax[j], reach)
+                        || isLeaving(py[j], vy[j], ay[j], reach)) continue;
+                // only particles already read are overwritten
+                if (kept != i) move(i, kept);
+                kept++;
+            }
+        }
+        int removed = count - kept;
+        count = kept;
+        return removed;
+    }
+
+    // Returns true if a coordinate is past the reach on one side and its
+    // velocity and acceleration can never bring it back
+    private static boolean isLeaving(double p, double v, double a, double reach) {
+        return (p < -reach && v <= 0 && a <= 0) || (p > reach && v >= 0 && a >= 0);
+    }
+
+    // Copies the particle at index from to index to
+    private void move(int from, int to) {
+        for (int column = 0; column < DOUBLES; column++)
+            columns.setDouble(column, to, columns.getDouble(column, from));
+        for (int column = 0; column < FLOATS; column++)
+            columns.setFloat(column, to, columns.getFloat(column, from));
+    }
+
+    // Replaces the velocity of the particle at the given index
+    public void setVelocity(int i, double xvel, double yvel) {
+        columns.setDouble(VX, i, xvel);
+        columns.setDouble(VY, i, yvel);
+    }
+
+    // Returns the arena the particles are kept in, or null if they are on the
+    // heap
+    public ParticleArena getArena() {
+        return columns.getArena();
+    }
+
+    // Returns the number of particles in the buffer
+    public int size() {
+        return count;
+    }
+
+    // Returns the number of particles the buffer can hold
+    public int capacity() {
+        return columns.capacity();
+    }
+
+    // Returns x-position of particle i
+    public double getPx(int i) {
+        return columns.getDouble(PX, i);
+    }
+
+    // Returns y-position of particle i
+    public double getPy(int i) {
+        return columns.getDouble(PY, i);
+    }
+
+    // Returns x-velocity of particle i
+    public double getVx(int i) {
+        return columns.getDouble(VX, i);
+    }
+
+    // Returns y-velocity of particle i
+    public double getVy(int i) {
+        return columns.getDouble(VY, i);
+    }
+
+    // Returns x-acceleration of particle i
+    public double getAx(int i) {
+        return columns.getDouble(AX, i);
+    }
+
+    // Returns y-acceleration of particle i
+    public double getAy(int i) {
+        return columns.getDouble(AY, i);
+    }
+
+    // Returns radius of particle i
+    public double getSize(int i) {
+        return columns.getDouble(SIZE, i);
+    }
+
+    // Returns red value of particle i
+    public float getRed(int i) {
+        return columns.getFloat(RED, i);
+    }
+
+    // Returns green value of particle i
+    public float getGreen(int i) {
+        return columns.getFloat(GREEN, i);
+    }
+
+    // Returns blue value of particle i
+    public float getBlue(int i) {
+        return columns.getFloat(BLUE, i);
+    }
+
+    // Returns color opacity of particle i
+    public float getColorAlpha(int i) {
+        return columns.getFloat(ALPHA, i);
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // same starting values as the tester in Particle.main
+        ParticleBuffer buffer = new ParticleBuffer(2);
+        buffer.add(0, 0, 0.1, 0.1, 0.01, 0.01, 0.1, 0.0F, 0.5F, 0.5F);
+        buffer.add(1, 1, 0.1, 0.1, 0.01, 0.01, 0.1, 0.0F, 0.5F, 0.5F);
+        StdOut.println("Size: " + buffer.size()); // should print 2
+
+        buffer.step(); // step 1
+        buffer.step(); // step 2
+        StdOut.println("X Position: " + buffer.getPx(0));
+        StdOut.println("Y Position: " + buffer.getPy(1));
+        // should print 0.23 and 1.23
+        StdOut.println("X Velocity: " + buffer.getVx(0));
+        // should print 0.12
+
+        buffer.setVelocity(1, 0.5, 0.5);
+        StdOut.println("New Y Velocity: " + buffer.getVy(1));
+        // should print 0.5
+
+        buffer.fade(0.8);
+        StdOut.println("New Color Opacity: " + buffer.getColorAlpha(0));
+        // should print 0.8
+
+        // jumping ahead gives the same motion as stepping
+        ParticleBuffer stepped = new ParticleBuffer(1, new FireworkRandom(1));
+        ParticleBuffer jumped = new ParticleBuffer(1, new FireworkRandom(1));
+        stepped.add(0, 0, 0.1, 0.5, 0.01, -0.02, 0.1, 0.5F, 0.5F, 0.5F);
+        jumped.add(0, 0, 0.1, 0.5, 0.01, -0.02, 0.1, 0.5F, 0.5F, 0.5F);
+        for (int i = 0; i < 30; i++) {
+            stepped.step();
+            stepped.fade(0.9);
+        }
+        jumped.advance(30);
+        jumped.fade(0.9, 30);
+        StdOut.printf("Stepped: %.6f %.6f %.6f%n", stepped.getPx(0), stepped.getPy(0),
+                      stepped.getVy(0));
+        StdOut.printf("Jumped:  %.6f %.6f %.6f%n", jumped.getPx(0), jumped.getPy(0),
+                      jumped.getVy(0)); // should print the same numbers
+        StdOut.println("Same opacity: "
+                               + (stepped.getColorAlpha(0) == jumped.getColorAlpha(0)));
+        // should print true
+
+        // culling drops the particle that has left the view for good
+        buffer.setVelocity(0, 5, 0);
+        for (int i = 0; i < 3; i++) buffer.step();
+        StdOut.println("Culled: " + buffer.cull(0.01F, 10)); // should print 1
+        StdOut.println("Size: " + buffer.size()); // should print 1
+        StdOut.println("Kept X Position: " + buffer.getPx(0)); // should print 2.79
+
+        // the buffer refuses particles beyond its capacity
+        buffer.add(0, 0, 0, 0, 0, 0, 0.1, 0.0F, 0.5F, 0.5F);
+        try {
+            buffer.add(0, 0, 0, 0, 0, 0, 0.1, 0.0F, 0.5F, 0.5F);
+        }
+        catch (IllegalStateException e) {
+            StdOut.println("Full buffer: " + e.getMessage());
+        }
+    }
+}
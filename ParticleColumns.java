@@ -0,0 +1,53 @@
+/* This file describes the memory a ParticleBuffer keeps its particles in:
+   one column per attribute, seven of doubles and four of floats, numbered by
+   the column constants of ParticleBuffer. The buffer does every bit of
+   arithmetic on its particles itself and only asks its columns for arrays to
+   do it in, one chunk at a time, so the same loops and the same
+   IntegrationKernel move and fade particles wherever they are kept.
+
+   HeapColumns keeps each column as one array on the Java heap and hands out
+   those arrays themselves. OffHeapColumns keeps the columns in memory taken
+   from a ParticleArena, outside the heap; it copies the chunk a loop works on
+   into arrays of the thread running the loop, and copies back what the loop
+   changed. */
+
+public interface ParticleColumns {
+    // Returns the number of particles the columns hold
+    int capacity();
+
+    // Returns the value of particle i in a column of doubles
+    double getDouble(int column, int i);
+
+    // Sets the value of particle i in a column of doubles
+    void setDouble(int column, int i, double value);
+
+    // Returns the value of particle i in a column of floats
+    float getFloat(int column, int i);
+
+    // Sets the value of particle i in a column of floats
+    void setFloat(int column, int i, float value);
+
+    // Returns an array holding the values of a column of doubles for the
+    // particles from lo up to, but not including, hi, with particle i at index
+    // start(lo) + i - lo. At most ParticleBuffer.CHUNK particles are asked for
+    // at once, and the array is only good until the same column is asked for
+    // again on the same thread.
+    double[] doubles(int column, int lo, int hi);
+
+    // Returns an array holding the values of a column of floats, like doubles
+    float[] floats(int column, int lo, int hi);
+
+    // Returns the index at which the arrays of doubles and floats hold
+    // particle lo
+    int start(int lo);
+
+    // Keeps the values changed in an array returned by doubles(column, lo, hi)
+    void putDoubles(int column, double[] values, int lo, int hi);
+
+    // Keeps the values changed in an array returned by floats(column, lo, hi)
+    void putFloats(int column, float[] values, int lo, int hi);
+
+    // Returns the arena the columns are kept in, or null if they are on the
+    // heap
+    ParticleArena getArena();
+}
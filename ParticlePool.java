@@ -0,0 +1,147 @@
+/* This file recycles particle buffers between fireworks. A show makes a new
+   firework for every entry it reads, and without a pool each one would
+   allocate fresh arrays for all of its particles and leave the old ones to
+   the garbage collector. Instead, a firework that has faded hands its buffer
+   back, and the next firework that needs about as many particles takes it.
+   Only buffers up to twice the size asked for are reused, so a small firework
+   never holds on to a huge buffer, and the pool keeps at most MAX_PARTICLES
+   particles' worth of buffers, so a long show runs with flat memory use.
+
+   With -Dfireworks.offheap=true, the fireworks of a group (made between
+   startGroup and endGroup, such as the fireworks of one entry of a show)
+   take their buffers from a ParticleArena outside the heap instead, opened
+   for that group, and the bursts of their stages take theirs from the same
+   arena. Released buffers go back to their arena, which is freed all at once
+   when the last of them is released. If the Foreign Memory API is missing,
+   buffers come from the pool as usual. */
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ParticlePool {
+    // most particles held by buffers waiting in the pool
+    public static final int MAX_PARTICLES = 1 << 20;
+    // true if groups of fireworks keep their particles outside the heap
+    private static final boolean OFF_HEAP = Boolean.getBoolean("fireworks.offheap");
+
+    // buffers waiting to be reused, by capacity
+    private static final TreeMap<Integer, ArrayDeque<ParticleBuffer>> free =
+            new TreeMap<Integer, ArrayDeque<ParticleBuffer>>();
+    private static long pooled; // particles held by buffers in the pool
+    private static long allocated; // buffers made because none could be reused
+    private static long reused; // buffers handed out again from the pool
+    private static boolean grouping; // true while a group's fireworks are made
+    private static ParticleArena arena; // arena of the group being made, or null
+    private static long arenas; // arenas opened
+
+    // Starts a group of fireworks: until endGroup, every buffer is taken from
+    // one arena outside the heap if -Dfireworks.offheap=true, and from the
+    // pool otherwise
+    public static synchronized void startGroup() {
+        grouping = OFF_HEAP;
+        arena = null;
+    }
+
+    // Ends the group of fireworks. Its arena is freed once every buffer taken
+    // from it has been released.
+    public static synchronized void endGroup() {
+        grouping = false;
+        arena = null;
+    }
+
+    // Returns an empty buffer with room for at least the given number of
+    // particles that takes its color variation from the given random stream
+    public static synchronized ParticleBuffer acquire(int capacity, FireworkRandom random) {
+        if (grouping) {
+            // open the group's arena on first use, or again if every buffer
+            // taken so far was already released
+            if (arena == null || arena.isFreed()) {
+                arena = ParticleArena.open();
+                if (arena == null) grouping = false; // no Foreign Memory API
+                else arenas++;
+            }
+            if (arena != null) return arena.allocate(capacity, random);
+        }
+        // smallest pooled buffer that is big enough but not more than twice so
+        Map.Entry<Integer, ArrayDeque<ParticleBuffer>> entry = free.ceilingEntry(capacity);
+        if (entry != null && entry.getKey() <= 2L * capacity) {
+            ParticleBuffer buffer = entry.getValue().pop();
+            if (entry.getValue().isEmpty()) free.remove(entry.getKey());
+            pooled -= buffer.capacity();
+            reused++;
+            buffer.reset(random);
+            return buffer;
+        }
+        allocated++;
+        return new ParticleBuffer(capacity, random);
+    }
+
+    // Returns an empty buffer like acquire, kept in the same arena as the
+    // given buffer if that one is outside the heap, so the bursts of a stage
+    // are freed along with the firework they broke out of
+    public static ParticleBuffer acquire(int capacity, FireworkRandom random,
+                                         ParticleBuffer near) {
+        ParticleArena arena = near.getArena();
+        if (arena != null) return arena.allocate(capacity, random);
+        return acquire(capacity, random);
+    }
+
+    // Hands a buffer back to be reused, or to its arena. The buffer must not
+    // be used again by the one who released it.
+    public static synchronized void release(ParticleBuffer buffer) {
+        if (buffer.getArena() != null) {
+            buffer.getArena().release(buffer);
+            return;
+        }
+        if (pooled + buffer.capacity() > MAX_PARTICLES) return; // let it be collected
+        ArrayDeque<ParticleBuffer> buffers = free.get(buffer.capacity());
+        if (buffers == null) {
+            buffers = new ArrayDeque<ParticleBuffer>();
+            free.put(buffer.capacity(), buffers);
+        }
+        buffers.push(buffer);
+        pooled += buffer.capacity();
+    }
+
+    // Returns the number of buffers made because none could be reused
+    public static synchronized long getAllocated() {
+        return allocated;
+    }
+
+    // Returns the number of buffers handed out again from the pool
+    public static synchronized long getReused() {
+        return reused;
+    }
+
+    // Returns the number of arenas opened for groups of fireworks
+    public static synchronized long getArenas() {
+        return arenas;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        FireworkRandom random = new FireworkRandom(126);
+
+        // a released buffer goes to the next firework of a similar size
+        ParticleBuffer first = acquire(100, random);
+        release(first);
+        ParticleBuffer second = acquire(80, random);
+        StdOut.println("Reused: " + (first == second)); // should print true
+        StdOut.println("Empty: " + second.size()); // should print 0
+
+        // a buffer more than twice as big as needed is not handed out
+        release(second);
+        ParticleBuffer small = acquire(10, random);
+        StdOut.println("Reused for 10: " + (small == first)); // should print false
+
+        // a long run of fireworks makes only a few buffers
+        for (int i = 0; i < 10000; i++) {
+            ParticleBuffer buffer = acquire(50 + i % 100, random);
+            for (int j = 0; j < 50; j++) buffer.add(0, 0, 0, 0, 0, 0, 0.1, 1, 1, 1);
+            release(buffer);
+        }
+        StdOut.println("Allocated: " + getAllocated()); // should print a handful
+        StdOut.println("Reused: " + getReused()); // should print about 10000
+    }
+}
@@ -0,0 +1,86 @@
+/* This file holds the pool of worker threads that update large particle
+   buffers in parallel. A buffer is cut into fixed-size chunks of particles and
+   every chunk draws its random numbers from its own stream, so the result of
+   an update depends only on the seed, never on how many threads ran it or in
+   which order the chunks were done. With no workers enabled every update runs
+   on the calling thread. */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+public class ParticleWorkers {
+    private static volatile ForkJoinPool pool; // workers, or null to update on the caller
+
+    // Sets the number of threads that update particles. One thread (or fewer)
+    // turns parallel updates off.
+    public static synchronized void setThreads(int threads) {
+        if (pool != null) pool.shutdown();
+        if (threads > 1) pool = new ForkJoinPool(threads);
+        else pool = null;
+    }
+
+    // Returns the number of threads that update particles
+    public static synchronized int getThreads() {
+        if (pool == null) return 1;
+        return pool.getParallelism();
+    }
+
+    // Returns true if updates with the given number of chunks should be split
+    // across the workers
+    public static boolean isParallel(int chunks) {
+        return pool != null && chunks > 1;
+    }
+
+    // Runs the task once for every chunk from 0 to chunks - 1 on the workers
+    // and waits until all of them are done
+    public static void forEachChunk(int chunks, IntConsumer task) {
+        ForkJoinPool workers = pool;
+        if (workers == null) {
+            for (int c = 0; c < chunks; c++) task.accept(c);
+            return;
+        }
+        workers.submit(() -> IntStream.range(0, chunks).parallel().forEach(task)).join();
+    }
+
+    // Returns a hash of the positions and colors of every particle in a buffer
+    private static long checksum(ParticleBuffer buffer) {
+        long hash = 0;
+        for (int i = 0; i < buffer.size(); i++) {
+            hash = 31 * hash + Double.doubleToLongBits(buffer.getPx(i));
+            hash = 31 * hash + Double.doubleToLongBits(buffer.getPy(i));
+            hash = 31 * hash + Float.floatToIntBits(buffer.getRed(i));
+            hash = 31 * hash + Float.floatToIntBits(buffer.getColorAlpha(i));
+        }
+        return hash;
+    }
+
+    // Runs 40 frames of a seeded 200,000-particle buffer with the given number
+    // of threads and returns the checksum and run time
+    private static long run(int threads) {
+        setThreads(threads);
+        ParticleBuffer buffer = new ParticleBuffer(200000, new FireworkRandom(126));
+        for (int i = 0; i < buffer.capacity(); i++)
+            buffer.add(0, -10, 0.001 * (i % 600 - 300), 0.5, 0, -0.014, 0.1,
+                       1.0F, 0.1F, 0.0F);
+        long start = System.nanoTime();
+        for (int frame = 0; frame < 40; frame++) {
+            buffer.step();
+            buffer.fade(0.9);
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        StdOut.println(threads + " threads: " + millis + " ms");
+        return checksum(buffer);
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long single = run(1);
+        long two = run(2);
+        long all = run(Math.max(cores, 4));
+        StdOut.println("Same result: " + (single == two && two == all));
+        // should print true
+        setThreads(1);
+    }
+}
@@ -0,0 +1,126 @@
+/* This file keeps a show at its frame rate on slow machines by lowering how
+   well it is drawn. After every frame it is told how long the frame worked
+   (not counting the time spent waiting for the clock) and keeps a smoothed
+   average. When the average comes close to the time one frame may take, the
+   quality is lowered one level; when there has been plenty of time to spare
+   for a while, it is raised again. Each level draws more cheaply than the one
+   before it:
+
+     FULL     every particle, as a smooth circle, with full trails
+     REDUCED  every particle, as a cheaper shape, with shorter trails
+     LOW      every other particle, as a cheaper shape, with half the trails
+     LOWEST   every fourth particle, as a cheaper shape, with short trails
+
+   Only drawing changes. The physics of every particle is still run each time
+   step, so the show looks the same in time and stays with the music at any
+   level. */
+
+public class QualityGovernor {
+    // quality levels, from best to cheapest
+    public static final int FULL = 0;
+    public static final int REDUCED = 1;
+    public static final int LOW = 2;
+    public static final int LOWEST = 3;
+
+    // weight of the newest frame in the smoothed frame time
+    private static final double SMOOTHING = 0.1;
+    // fraction of the budget above which quality is lowered
+    private static final double OVER = 0.9;
+    // fraction of the budget below which quality is raised
+    private static final double UNDER = 0.5;
+    // frames to wait after a change before lowering again, so the average
+    // can show the effect of the change
+    private static final int SETTLE_FRAMES = 10;
+    // frames with time to spare before quality is raised again
+    private static final int RECOVER_FRAMES = 60;
+
+    private final double budgetNanos; // time one frame may take
+    private double average; // smoothed frame time in nanoseconds
+    private int level = FULL; // current quality level
+    private int framesAtLevel; // frames since the level last changed
+
+    // Creates a governor for frames that may take the given number of
+    // milliseconds
+    public QualityGovernor(double budgetMillis) {
+        if (budgetMillis <= 0)
+            throw new IllegalArgumentException("Frame budget must be positive");
+        budgetNanos = budgetMillis * 1e6;
+    }
+
+    // Adds the time the last frame worked, in nanoseconds, and returns the
+    // quality level the next frame should be drawn with
+    public int update(long frameNanos) {
+        if (average == 0) average = frameNanos;
+        else average += SMOOTHING * (frameNanos - average);
+        framesAtLevel++;
+
+        if (average > OVER * budgetNanos && level < LOWEST
+                && framesAtLevel >= SETTLE_FRAMES) {
+            level++;
+            framesAtLevel = 0;
+        }
+        else if (average < UNDER * budgetNanos && level > FULL
+                && framesAtLevel >= RECOVER_FRAMES) {
+            level--;
+            framesAtLevel = 0;
+        }
+        return level;
+    }
+
+    // Returns the current quality level
+    public int getLevel() {
+        return level;
+    }
+
+    // Returns the smoothed frame time in milliseconds
+    public double getAverageMillis() {
+        return average / 1e6;
+    }
+
+    // Returns the step between drawn particles at the given level: 1 draws
+    // every particle, 2 every other one
+    public static int particleStride(int level) {
+        if (level >= LOWEST) return 4;
+        if (level >= LOW) return 2;
+        return 1;
+    }
+
+    // Returns true if particles are drawn as a cheaper shape at the given level
+    public static boolean cheapShapes(int level) {
+        return level >= REDUCED;
+    }
+
+    // Returns the length of trails at the given level as a fraction of their
+    // full length
+    public static double trailLength(int level) {
+        if (level >= LOWEST) return 0.25;
+        if (level >= LOW) return 0.5;
+        if (level >= REDUCED) return 0.75;
+        return 1.0;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        QualityGovernor governor = new QualityGovernor(FrameScheduler.STEP_MS);
+
+        // a machine where a full-quality frame takes 100 ms, and every level
+        // costs less in proportion to the particles and shapes it draws
+        int frames = 0;
+        while (governor.getLevel() < LOWEST && frames < 1000) {
+            int level = governor.getLevel();
+            double cost = 100.0 / particleStride(level) * (cheapShapes(level) ? 0.7 : 1);
+            governor.update((long) (cost * 1e6));
+            frames++;
+        }
+        StdOut.println("Lowest level after " + frames + " frames"); // a few dozen
+
+        // once frames are cheap again, quality comes back a level at a time
+        frames = 0;
+        while (governor.getLevel() > FULL && frames < 1000) {
+            governor.update(5000000);
+            frames++;
+        }
+        StdOut.println("Full quality after " + frames + " frames"); // about 180
+        StdOut.printf("Average: %.1f ms%n", governor.getAverageMillis());
+    }
+}
@@ -0,0 +1,276 @@
+/* This file draws a firework show into the pixel array of a BufferedImage
+   instead of asking Java2D to fill one antialiased circle per particle. Each
+   particle is splatted as a small disc whose color, scaled by its alpha, is
+   added to the pixels underneath, so where sparks overlap the sky gets
+   brighter the way it does with real fireworks. Backgrounds come from the
+   BackgroundCache already drawn on a frame of the right size, and the
+   finished frame is shown with a single image copy into the StdDraw window.
+
+   Particles are not drawn onto the background directly but into a separate
+   trail layer. When a frame is shown, one pass over the pixels adds the trail
+   layer onto the background to make the frame and then dims the trail layer
+   by the decay factor, so the sparks of earlier frames fade out smoothly. The
+   cost of trails is the same every frame however many particles there are.
+   At lower quality levels fewer particles are drawn, each as a dot of at
+   most three pixels across, and trails fade faster. The decay factor is 0.8
+   unless -Dfireworks.trail.decay sets another value from 0 up to 1. */
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+public class RasterRenderer implements Renderer {
+    // the show is drawn in the square from -SCALE to SCALE, as in StdDraw
+    private static final double SCALE = 10.0;
+    // largest particle radius in pixels that has a precomputed disc
+    private static final int MAX_RADIUS = 64;
+    // fraction of the trail layer's brightness kept from one frame to the
+    // next, unless -Dfireworks.trail.decay sets another
+    private static final double DEFAULT_DECAY = 0.8;
+    private static final double TRAIL_DECAY = trailDecayProperty();
+
+    private final int width, height; // size of the frame in pixels
+    private final BufferedImage frame; // the frame being shown
+    private final int[] pixels; // the frame's pixels, one 0xRRGGBB int each
+    private final int[] trail; // the trail layer that particles are drawn into
+    private String background; // file name of the current background
+    private double trailDecay; // trail brightness kept per frame at full quality
+    private int decay; // trail brightness kept per frame, out of 256
+    private int stride = 1; // step between drawn particles
+    private int maxRadius = MAX_RADIUS; // largest disc drawn, in pixels
+    private double trailLength = 1; // trail length as a fraction of full
+
+    // for every radius, the half-width of the disc on each row from its center
+    private final int[][] discs = new int[MAX_RADIUS + 1][];
+
+    // Creates a renderer for frames of the given size in pixels
+    public RasterRenderer(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Frame size must be positive");
+        this.width = width;
+        this.height = height;
+        frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        trail = new int[width * height];
+        setTrailDecay(TRAIL_DECAY);
+    }
+
+    // Returns the trail decay set with -Dfireworks.trail.decay, or
+    // DEFAULT_DECAY if it is not set, not a number, or not from 0 up to 1
+    private static double trailDecayProperty() {
+        String value = System.getProperty("fireworks.trail.decay");
+        if (value == null) return DEFAULT_DECAY;
+        try {
+            double decay = Double.parseDouble(value);
+            if (decay >= 0 && decay < 1) return decay;
+        }
+        catch (NumberFormatException e) {
+            // not a number: keep the default
+        }
+        return DEFAULT_DECAY;
+    }
+
+    // Sets the fraction of brightness the trails keep from one frame to the
+    // next: 0 leaves no trails, and values near 1 leave long ones
+    private void setTrailDecay(double decay) {
+        if (decay < 0 || decay >= 1)
+            throw new IllegalArgumentException("Decay must be in [0, 1)");
+        trailDecay = decay;
+        // a trail a fraction as long fades that many times as fast
+        this.decay = (int) (Math.pow(decay, 1 / trailLength) * 256);
+    }
+
+    // Draws fewer, smaller particles with shorter trails at lower levels
+    public void setQuality(int level) {
+        stride = QualityGovernor.particleStride(level);
+        maxRadius = QualityGovernor.cheapShapes(level) ? 1 : MAX_RADIUS;
+        trailLength = QualityGovernor.trailLength(level);
+        setTrailDecay(trailDecay);
+    }
+
+    // Clears the frame to the given background image, placed as StdDraw
+    // placed it, and wipes out all trails
+    public void clear(String image) {
+        background = image;
+        Arrays.fill(trail, 0);
+        // show the background right away even if nothing is drawn over it
+        System.arraycopy(BackgroundCache.pixels(image, width, height), 0, pixels, 0,
+                         pixels.length);
+    }
+
+    // Starts a frame over the given background that keeps the fading trails;
+    // the trails were already dimmed when the last frame was shown
+    public void trail(String image) {
+        background = image;
+    }
+
+    // Returns the half-widths of the rows of a disc with the given radius
+    private int[] disc(int radius) {
+        int[] rows = discs[radius];
+        if (rows == null) {
+            rows = new int[radius + 1];
+            for (int dy = 0; dy <= radius; dy++)
+                rows[dy] = (int) Math.sqrt((radius + 0.5) * (radius + 0.5) - dy * dy);
+            discs[radius] = rows;
+        }
+        return rows;
+    }
+
+    // Adds every particle into the frame
+    public void draw(ParticleBuffer particles) {
+        double xPixels = width / (2 * SCALE); // pixels per unit across
+        double yPixels = height / (2 * SCALE); // pixels per unit down
+        for (int i = 0; i < particles.size(); i += stride) {
+            float a = particles.getColorAlpha(i) * 255;
+            int red = (int) (particles.getRed(i) * a);
+            int green = (int) (particles.getGreen(i) * a);
+            int blue = (int) (particles.getBlue(i) * a);
+            if ((red | green | blue) == 0) continue; // adds nothing
+
+            int cx = (int) ((particles.getPx(i) + SCALE) * xPixels);
+            int cy = (int) ((SCALE - particles.getPy(i)) * yPixels);
+            int radius = (int) (particles.getSize(i) * xPixels);
+            if (radius > maxRadius) radius = maxRadius;
+            splat(cx, cy, disc(radius), red, green, blue);
+        }
+    }
+
+    // Adds the color to every trail pixel of a disc centered at (cx, cy),
+    // leaving out the parts of the disc outside the frame
+    private void splat(int cx, int cy, int[] disc, int red, int green, int blue) {
+        int radius = disc.length - 1;
+        int top = Math.max(cy - radius, 0);
+        int bottom = Math.min(cy + radius, height - 1);
+        for (int y = top; y <= bottom; y++) {
+            int half = disc[Math.abs(y - cy)];
+            int left = Math.max(cx - half, 0);
+            int right = Math.min(cx + half, width - 1);
+            int row = y * width;
+            for (int x = left; x <= right; x++) {
+                int pixel = trail[row + x];
+                int r = ((pixel >> 16) & 0xFF) + red;
+                int g = ((pixel >> 8) & 0xFF) + green;
+                int b = (pixel & 0xFF) + blue;
+                // saturate each channel at full brightness
+                if (r > 255) r = 255;
+                if (g > 255) g = 255;
+                if (b > 255) b = 255;
+                trail[row + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    // Adds the trail layer onto the background to make the frame, and dims
+    // the trail layer for the next frame, in one pass over the pixels
+    private void composite() {
+        int[] sky = null;
+        if (background != null) sky = BackgroundCache.pixels(background, width, height);
+        int keep = decay;
+        for (int i = 0; i < pixels.length; i++) {
+            int light = trail[i];
+            int base = 0;
+            if (sky != null) base = sky[i];
+            int r = ((base >> 16) & 0xFF) + ((light >> 16) & 0xFF);
+            int g = ((base >> 8) & 0xFF) + ((light >> 8) & 0xFF);
+            int b = (base & 0xFF) + (light & 0xFF);
+            // saturate each channel at full brightness
+            if (r > 255) r = 255;
+            if (g > 255) g = 255;
+            if (b > 255) b = 255;
+            pixels[i] = (r << 16) | (g << 8) | b;
+
+            // dim every channel of the trail by the decay factor
+            if (light != 0) {
+                trail[i] = ((((light >> 16) & 0xFF) * keep >> 8) << 16)
+                        | ((((light >> 8) & 0xFF) * keep >> 8) << 8)
+                        | ((light & 0xFF) * keep >> 8);
+            }
+        }
+    }
+
+    // Finishes the frame and displays it in the StdDraw window, with the
+    // frame statistics over it if the HUD is on
+    public void show() {
+        StdDrawCanvas.present(render());
+    }
+
+    // Finishes the frame without displaying it and returns it. The frame is
+    // drawn over by the next frame, so it must be copied to be kept.
+    public BufferedImage render() {
+        composite();
+        if (FrameStats.HUD) drawHud();
+        return frame;
+    }
+
+    // Writes the frame statistics in the top left corner of the frame
+    private void drawHud() {
+        Graphics2D g = frame.createGraphics();
+        g.setColor(Color.WHITE);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        String[] lines = FrameStats.hudLines();
+        for (int i = 0; i < lines.length; i++) g.drawString(lines[i], 8, 18 + 14 * i);
+        g.dispose();
+    }
+
+    // Starts playing the given sound file. Short effects are mixed on the
+    // audio thread, songs loaded ahead of time play from memory on their own
+    // line, and other long sounds are streamed with StdAudio.
+    public void play(String sound) {
+        if (!AudioMixer.play(sound) && !SongPlayer.play(sound)) StdAudio.play(sound);
+    }
+
+    // Returns the last frame shown
+    public BufferedImage getFrame() {
+        return frame;
+    }
+
+    // Returns the color of the trail layer at (x, y) as 0xRRGGBB
+    public int getTrailPixel(int x, int y) {
+        return trail[y * width + x];
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        RasterRenderer renderer = new RasterRenderer(200, 200);
+
+        // two half-transparent red sparks on top of each other add up
+        ParticleBuffer sparks = new ParticleBuffer(2, new FireworkRandom(126));
+        sparks.add(0, 0, 0, 0, 0, 0, 0.5, 1.0F, 0.0F, 0.0F);
+        sparks.add(0, 0, 0, 0, 0, 0, 0.5, 1.0F, 0.0F, 0.0F);
+        sparks.fade(0.5);
+        renderer.draw(sparks);
+        int red = (renderer.getTrailPixel(100, 100) >> 16) & 0xFF;
+        StdOut.println("Overlap red: " + red); // about twice a single spark's red
+        StdOut.println("Corner: " + renderer.getTrailPixel(0, 0)); // should print 0
+
+        // the trail fades by the decay factor each frame
+        renderer.composite();
+        int faded = (renderer.getTrailPixel(100, 100) >> 16) & 0xFF;
+        StdOut.println("Faded red: " + faded); // about 0.8 of the overlap red, the default decay
+        int frames = 1;
+        while (renderer.getTrailPixel(100, 100) != 0) {
+            renderer.composite();
+            frames++;
+        }
+        StdOut.println("Frames until gone: " + frames); // about 20
+
+        // time splatting a large number of particles
+        ParticleBuffer many = new ParticleBuffer(1000000, new FireworkRandom(126));
+        FireworkRandom random = new FireworkRandom(1);
+        for (int i = 0; i < many.capacity(); i++)
+            many.add(random.uniform(-10, 10), random.uniform(-10, 10), 0, 0, 0, 0,
+                     0.05, 1.0F, 0.6F, 0.0F);
+        long start = System.nanoTime();
+        renderer.draw(many);
+        StdOut.println("Splatted 1,000,000 particles in "
+                               + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // the cost of trails does not depend on the number of particles
+        start = System.nanoTime();
+        for (int i = 0; i < 100; i++) renderer.composite();
+        StdOut.println("Composite: " + (System.nanoTime() - start) / 100 / 1000 + " us");
+    }
+}
@@ -0,0 +1,27 @@
+/* This file describes everything a firework show sends out while it plays:
+   cleared frames, frames with trails, particles, displayed frames, and sounds.
+   Each renderer decides how to draw trails. The show engine only talks to a
+   Renderer, so the same show can be drawn in a StdDraw window or run with no
+   window or audio at all. */
+
+public interface Renderer {
+    // Clears the frame to the given background image
+    void clear(String image);
+
+    // Starts a frame over the given background image that keeps fading trails
+    // of the particles drawn in earlier frames
+    void trail(String image);
+
+    // Draws every particle in the buffer onto the frame
+    void draw(ParticleBuffer particles);
+
+    // Displays the finished frame
+    void show();
+
+    // Starts playing the given sound file without waiting for it to finish
+    void play(String sound);
+
+    // Draws the frames that follow at the given QualityGovernor level, from
+    // FULL down to LOWEST. A renderer may ignore levels it has no use for.
+    void setQuality(int level);
+}
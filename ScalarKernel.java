@@ -0,0 +1,40 @@
+/* This file runs the particle loops of IntegrationKernel one element at a
+   time. It works on every JVM and is the kernel VectorKernel must match. */
+
+public class ScalarKernel implements IntegrationKernel {
+    // Adds each acceleration to its velocity and then each new velocity to
+    // its position
+    public void integrate(double[] p, double[] v, double[] a, int lo, int hi) {
+        for (int i = lo; i < hi; i++) {
+            v[i] += a[i]; // updates velocity using acceleration
+            p[i] += v[i]; // updates position using new velocity
+        }
+    }
+
+    // Multiplies every element by factor
+    public void scale(float[] values, float factor, int lo, int hi) {
+        for (int i = lo; i < hi; i++) {
+            values[i] *= factor;
+        }
+    }
+
+    // Returns the name of the kernel
+    public String name() {
+        return "scalar";
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        double[] p = { 0, 1 };
+        double[] v = { 0.1, 0.1 };
+        double[] a = { 0.01, 0.01 };
+        ScalarKernel kernel = new ScalarKernel();
+        kernel.integrate(p, v, a, 0, 2);
+        kernel.integrate(p, v, a, 0, 2);
+        StdOut.println("Positions: " + p[0] + " " + p[1]); // should print 0.23 1.23
+        float[] alpha = { 1, 1 };
+        kernel.scale(alpha, 0.8F, 0, 1);
+        StdOut.println("Alpha: " + alpha[0] + " " + alpha[1]); // should print 0.8 1.0
+        StdOut.println("Loaded kernel: " + IntegrationKernel.load().name());
+    }
+}
@@ -0,0 +1,305 @@
+/* This file checks a text show script and compiles it into the binary format
+   read by ShowFile. The whole script is checked before anything is written:
+   every number must be present, well formed, and in range, and any mistake is
+   reported with its line number, so a bad token can no longer stop a show
+   halfway through.
+
+   An entry may start with a launch time such as @12500, in milliseconds from
+   the start of the song. An entry without one is launched when the entry
+   before it is expected to have faded, so old scripts still play their
+   fireworks one after another. A firework may start with the name of a
+   BurstShape, such as heart or palm; a firework without one bursts into a
+   ring. A firework may be followed by up to BurstStage.MAX_STAGES stages,
+   each written
+
+       stage parent delay every [shape] particles r g b
+
+   where parent is 0 for the firework's own burst or the number of an
+   earlier stage of the same firework, delay is the time steps after the
+   parent bursts, and every 4 breaks one particle in 4 into a small burst.
+   Run the compiler once per script:
+
+       java ShowCompiler FourthOfJuly.txt
+
+   which writes FourthOfJuly.show next to the script. */
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class ShowCompiler {
+    // most particles one firework or stage may have
+    public static final int MAX_PARTICLES = 10000000;
+    // most fireworks one group may have
+    private static final int MAX_GROUP = 100000;
+    // time steps a burst takes to fade below 0.01 alpha at 0.9 per step; a
+    // stage must break before that
+    public static final int BURST_STEPS = (int) Math.ceil(Math.log(0.01) / Math.log(0.9));
+
+    private final String fileName; // name of the script, for error messages
+    private final ArrayList<String> tokens = new ArrayList<String>(); // all tokens
+    private final ArrayList<Integer> lines = new ArrayList<Integer>(); // their lines
+    private int next; // index of the next token to read
+
+    // Splits the script into tokens and remembers the line of each
+    private ShowCompiler(String fileName) {
+        this.fileName = fileName;
+        In in = new In(fileName);
+        int line = 0;
+        while (in.hasNextLine()) {
+            line++;
+            for (String token : in.readLine().trim().split("\\s+")) {
+                if (token.isEmpty()) continue;
+                tokens.add(token);
+                lines.add(line);
+            }
+        }
+    }
+
+    // Returns an exception describing a mistake at the current token
+    private IllegalArgumentException error(String message) {
+        if (next >= tokens.size())
+            return new IllegalArgumentException(fileName + ": " + message
+                                                        + " but the script ended");
+        return new IllegalArgumentException(fileName + " line " + lines.get(next) + ": "
+                                                    + message + " but found '"
+                                                    + tokens.get(next) + "'");
+    }
+
+    // Returns true if every token has been read
+    private boolean isEmpty() {
+        return next >= tokens.size();
+    }
+
+    // Reads a name such as a song or picture file
+    private String readName(String what) {
+        if (isEmpty()) throw error("expected " + what);
+        return tokens.get(next++);
+    }
+
+    // Reads a whole number between min and max
+    private int readInt(String what, int min, int max) {
+        if (isEmpty()) throw error("expected " + what);
+        int value;
+        try {
+            value = Integer.parseInt(tokens.get(next));
+        }
+        catch (NumberFormatException e) {
+            throw error("expected " + what + " (a whole number)");
+        }
+        if (value < min || value > max)
+            throw error("expected " + what + " between " + min + " and " + max);
+        next++;
+        return value;
+    }
+
+    // Reads a finite real number between min and max
+    private double readDouble(String what, double min, double max) {
+        if (isEmpty()) throw error("expected " + what);
+        double value;
+        try {
+            value = Double.parseDouble(tokens.get(next));
+        }
+        catch (NumberFormatException e) {
+            throw error("expected " + what + " (a number)");
+        }
+        if (Double.isNaN(value) || value < min || value > max)
+            throw error("expected " + what + " between " + min + " and " + max);
+        next++;
+        return value;
+    }
+
+    // Reads an optional launch time such as @12500. Returns -1 if the next
+    // token is not a launch time.
+    private long readLaunchTime() {
+        if (isEmpty() || !tokens.get(next).startsWith("@")) return -1;
+        long value;
+        try {
+            value = Long.parseLong(tokens.get(next).substring(1));
+        }
+        catch (NumberFormatException e) {
+            throw error("expected launch time in milliseconds after @");
+        }
+        if (value < 0) throw error("expected launch time of 0 or more");
+        next++;
+        return value;
+    }
+
+    // Returns about how many milliseconds a firework takes from launch until
+    // it has faded: it rises until its y-velocity reaches 0 on average, then
+    // fades for BURST_STEPS steps after its last stage breaks
+    private static long estimateMillis(double[] values, ArrayList<double[]> stages) {
+        double vy = values[4];
+        double ay = values[6];
+        double launchSteps = 0;
+        if (vy > 0 && ay < 0) launchSteps = Math.ceil(vy / -ay);
+
+        // steps from the burst until each stage breaks, and the latest of them
+        int count = (int) values[13];
+        int[] breaks = new int[count + 1];
+        int last = 0;
+        for (int k = 1; k <= count; k++) {
+            double[] stage = stages.get((int) values[12] + k - 1);
+            breaks[k] = breaks[(int) stage[0]] + (int) stage[1];
+            last = Math.max(last, breaks[k]);
+        }
+        return (long) ((launchSteps + last + BURST_STEPS) * FrameScheduler.STEP_MS);
+    }
+
+    // Reads an optional burst shape name such as heart. Returns
+    // BurstShape.RING if the next token is a number.
+    private int readShape() {
+        if (isEmpty()) throw error("expected number of particles");
+        String token = tokens.get(next);
+        if (!Character.isLetter(token.charAt(0))) return BurstShape.RING;
+        int shape = BurstShape.parse(token);
+        if (shape < 0) {
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < BurstShape.count(); i++)
+                names.append(i == 0 ? "" : ", ").append(BurstShape.name(i));
+            throw error("expected a burst shape (" + names + ")");
+        }
+        next++;
+        return shape;
+    }
+
+    // Reads the stages that follow a firework, if any, adds them to the list,
+    // and returns how many there were
+    private int readStages(ArrayList<double[]> stages) {
+        int count = 0;
+        while (!isEmpty() && tokens.get(next).equals("stage")) {
+            if (count == BurstStage.MAX_STAGES)
+                throw error("expected at most " + BurstStage.MAX_STAGES + " stages");
+            next++;
+            double[] stage = new double[8];
+            stage[0] = readInt("parent stage", 0, count);
+            // a stage must break before its parent has faded
+            stage[1] = readInt("delay in time steps", 1, BURST_STEPS - 1);
+            stage[2] = readInt("spacing of breaking particles", 1, MAX_PARTICLES);
+            stage[3] = readShape();
+            stage[4] = readInt("number of particles", 1, MAX_PARTICLES);
+            stage[5] = readDouble("red value", 0, 1);
+            stage[6] = readDouble("green value", 0, 1);
+            stage[7] = readDouble("blue value", 0, 1);
+            stages.add(stage);
+            count++;
+        }
+        return count;
+    }
+
+    // Reads one firework with its stages, and returns its eleven values in
+    // record order, followed by its burst shape, its first stage, and its
+    // number of stages
+    private double[] readFirework(ArrayList<double[]> stages) {
+        double inf = Double.MAX_VALUE;
+        double[] values = new double[14];
+        values[11] = readShape();
+        values[0] = readInt("number of particles", 1, MAX_PARTICLES);
+        values[1] = readDouble("x position", -inf, inf);
+        values[2] = readDouble("y position", -inf, inf);
+        values[3] = readDouble("x velocity", -inf, inf);
+        values[4] = readDouble("y velocity", -inf, inf);
+        values[5] = readDouble("x acceleration", -inf, inf);
+        values[6] = readDouble("y acceleration", -inf, inf);
+        values[7] = readDouble("particle size", 0, inf);
+        values[8] = readDouble("red value", 0, 1);
+        values[9] = readDouble("green value", 0, 1);
+        values[10] = readDouble("blue value", 0, 1);
+        values[12] = stages.size();
+        values[13] = readStages(stages);
+        return values;
+    }
+
+    // Checks the whole script and returns it in compiled form
+    private ByteBuffer compile() {
+        String song = readName("song file name");
+        String background = readName("background file name");
+
+        // read every entry before writing anything
+        ArrayList<long[]> index = new ArrayList<long[]>(); // first, count, time
+        ArrayList<double[]> records = new ArrayList<double[]>();
+        ArrayList<double[]> stages = new ArrayList<double[]>();
+        long nextLaunch = 0; // when an entry without a launch time goes up
+        while (!isEmpty()) {
+            long launch = readLaunchTime();
+            if (launch < 0) launch = nextLaunch;
+            int loops = readInt("number of fireworks in the entry", 1, MAX_GROUP);
+            index.add(new long[] { records.size(), loops, launch });
+
+            // the next entry follows once the longest firework here has faded
+            long longest = 0;
+            for (int i = 0; i < loops; i++) {
+                double[] values = readFirework(stages);
+                records.add(values);
+                longest = Math.max(longest, estimateMillis(values, stages));
+            }
+            nextLaunch = launch + longest;
+        }
+
+        byte[] songBytes = song.getBytes(StandardCharsets.UTF_8);
+        byte[] backgroundBytes = background.getBytes(StandardCharsets.UTF_8);
+        if (songBytes.length > 0xFFFF || backgroundBytes.length > 0xFFFF)
+            throw new IllegalArgumentException(fileName + ": file name is too long");
+
+        int stringsOffset = ShowFile.HEADER_BYTES;
+        int indexOffset = stringsOffset + 4 + songBytes.length + backgroundBytes.length;
+        int recordsOffset = indexOffset + index.size() * ShowFile.INDEX_BYTES;
+        long stagesOffset = recordsOffset + (long) records.size() * ShowFile.RECORD_BYTES;
+        long size = stagesOffset + (long) stages.size() * ShowFile.STAGE_BYTES;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(fileName + ": show is too large");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(ShowFile.MAGIC).putInt(ShowFile.VERSION);
+        out.putInt(index.size()).putInt(records.size());
+        out.putInt(stringsOffset).putInt(indexOffset).putInt(recordsOffset);
+        out.putInt((int) stagesOffset);
+        out.putShort((short) songBytes.length).put(songBytes);
+        out.putShort((short) backgroundBytes.length).put(backgroundBytes);
+        for (long[] entry : index)
+            out.putInt((int) entry[0]).putInt((int) entry[1]).putLong(entry[2]);
+        for (double[] values : records) {
+            out.putInt((int) values[0]);
+            for (int field = 1; field <= 7; field++) out.putDouble(values[field]);
+            for (int field = 8; field <= 10; field++) out.putFloat((float) values[field]);
+            for (int field = 11; field <= 13; field++) out.putInt((int) values[field]);
+        }
+        for (double[] stage : stages) {
+            for (int field = 0; field <= 4; field++) out.putInt((int) stage[field]);
+            for (int field = 5; field <= 7; field++) out.putFloat((float) stage[field]);
+        }
+        out.flip();
+        return out;
+    }
+
+    // Checks the script in the file and returns it in compiled form. Throws an
+    // IllegalArgumentException naming the line of the first mistake.
+    public static ByteBuffer compile(String fileName) {
+        return new ShowCompiler(fileName).compile();
+    }
+
+    // Checks the script and writes the compiled show to the output file
+    public static void compile(String fileName, String outputName) {
+        ByteBuffer compiled = compile(fileName);
+        try (FileOutputStream out = new FileOutputStream(outputName)) {
+            out.getChannel().write(compiled);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not write '" + outputName + "'", e);
+        }
+    }
+
+    // Compiles the script named by the first argument into the file named by
+    // the second, or into the script's name ending in .show
+    public static void main(String[] args) {
+        String fileName = args[0];
+        String outputName = ShowFile.compiledName(fileName);
+        if (args.length > 1) outputName = args[1];
+        compile(fileName, outputName);
+        ShowFile show = ShowFile.open(outputName);
+        StdOut.println(fileName + " -> " + outputName + ": " + show.getEntries()
+                               + " entries, " + show.getFireworks() + " fireworks");
+    }
+}
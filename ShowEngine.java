@@ -0,0 +1,411 @@
+/* This file plays firework shows. It reads a compiled show (see ShowFile),
+   creates its fireworks from one seeded random stream, and runs the frame loops that
+   launch and burst them, sending every frame and sound to a Renderer. A show
+   runs as one frame loop: a ShowTimeline launches each entry when the song
+   reaches its launch time, and every firework in the air is stepped through
+   its own launch, burst, and fade, so fireworks can overlap. With a
+   StdDrawRenderer and real-time pacing it plays the show in the window with
+   music; with a HeadlessRenderer and no pacing it simulates the show as fast
+   as the machine allows, and the same seed always gives the same show.
+
+   Every firework takes its own stream, split from the engine's stream in
+   launch order, so its randomness does not depend on what else is in the
+   air. That lets a show start at any time: the fireworks launched before
+   then are made in the same order and moved straight to where they would be
+   with Firework.seek(), without playing the frames in between. */
+
+import java.util.ArrayList;
+
+public class ShowEngine {
+    private final Renderer renderer; // where frames and sounds are sent
+    private final FireworkRandom random; // randomness for every firework read
+    private final boolean realTime; // whether frames are paced to the clock
+    private final QualityGovernor governor; // lowers drawing quality when slow
+
+    // Creates an engine that plays in real time with unpredictable randomness
+    public ShowEngine(Renderer renderer) {
+        this(renderer, new FireworkRandom(), true);
+    }
+
+    // Creates an engine whose fireworks all take their randomness from a stream
+    // made from the given seed. If realTime is false, frames are not paced.
+    public ShowEngine(Renderer renderer, long seed, boolean realTime) {
+        this(renderer, new FireworkRandom(seed), realTime);
+    }
+
+    // Creates an engine from its renderer, random stream, and pacing
+    private ShowEngine(Renderer renderer, FireworkRandom random, boolean realTime) {
+        this.renderer = renderer;
+        this.random = random;
+        this.realTime = realTime;
+        // only a show paced in real time has a frame budget to keep
+        if (realTime) governor = new QualityGovernor(FrameScheduler.STEP_MS);
+        else governor = null;
+    }
+
+    // Returns a new scheduler that paces frames in real time or not at all
+    private FrameScheduler clock() {
+        if (realTime) return new FrameScheduler();
+        return FrameScheduler.unpaced();
+    }
+
+    // Waits for the clock and returns the number of time steps due. Tells the
+    // quality governor how long the frame worked, and changes the renderer's
+    // quality when the governor asks for it.
+    private int stepsDue(FrameScheduler clock) {
+        int steps = clock.stepsDue();
+        // a new scheduler has not timed a frame yet, and would report 0 ns
+        if (governor != null && clock.hasTimedFrame()) {
+            int level = governor.getLevel();
+            if (governor.update(clock.getBusyNanos()) != level)
+                renderer.setQuality(governor.getLevel());
+        }
+        return steps;
+    }
+
+    // Clears the frame to the background image, timing it for FrameStats
+    private void clear(String image) {
+        long start = FrameStats.start();
+        renderer.clear(image);
+        FrameStats.stop(FrameStats.CLEAR, start);
+    }
+
+    // Starts a frame with trails over the background image, timing it for
+    // FrameStats
+    private void trail(String image) {
+        long start = FrameStats.start();
+        renderer.trail(image);
+        FrameStats.stop(FrameStats.CLEAR, start);
+    }
+
+    // Displays the finished frame and records it in FrameStats
+    private void show() {
+        long start = FrameStats.start();
+        renderer.show();
+        FrameStats.stop(FrameStats.SHOW, start);
+        FrameStats.endFrame();
+    }
+
+    // Starts playing a sound, timing it for FrameStats
+    private void sound(String sound) {
+        long start = FrameStats.start();
+        renderer.play(sound);
+        FrameStats.stop(FrameStats.AUDIO, start);
+    }
+
+    // Plays the show script with the given file name from start to end. The
+    // script is checked (or its compiled copy mapped) before the show starts.
+    public void play(String fileName) {
+        play(ShowFile.open(fileName));
+    }
+
+    // Plays the show script with the given file name from the given number of
+    // milliseconds after the song starts to the end
+    public void play(String fileName, long startMillis) {
+        play(ShowFile.open(fileName), startMillis);
+    }
+
+    // Plays a compiled show from start to end
+    public void play(ShowFile show) {
+        play(show, 0);
+    }
+
+    // Plays a compiled show from the given number of milliseconds after the
+    // song starts to the end. Fireworks already in the air at that time are
+    // moved straight to where they would be. The song is only played when the
+    // show starts from the beginning, since StdAudio cannot start a song
+    // partway through.
+    public void play(ShowFile show, long startMillis) {
+        if (startMillis < 0) throw new IllegalArgumentException("Start time must be non-negative");
+        long started = System.nanoTime(); // for the time the show takes to start
+        String pictureName = show.getBackground(); // get background
+        ShowTimeline timeline = new ShowTimeline(show); // launches still to come
+        ActiveSet active = new ActiveSet(); // fireworks in the air
+
+        // display show
+        clear(pictureName); // show background image
+        show();
+        // physics steps run since the song started
+        long stepsRun = startMillis / FrameScheduler.STEP_MS;
+        if (stepsRun == 0) sound(show.getSong()); // start song
+
+        FrameScheduler clock = clock(); // paces the time steps
+        if (stepsRun == 0) launchDue(show, timeline, active, 0);
+        else seek(show, timeline, active, stepsRun);
+        AssetManager.showStarted(System.nanoTime() - started);
+        while (!timeline.isEmpty() || !active.isEmpty()) {
+            // display every firework in the air
+            drawGroup(active);
+
+            // runs every time step that is due, catching up after a slow frame
+            int steps = stepsDue(clock);
+            for (int step = 0; step < steps; step++) {
+                stepsRun++;
+                // song time counts dropped steps too, so launches stay on the beat
+                long songMillis = (stepsRun + clock.getSkippedSteps()) * FrameScheduler.STEP_MS;
+                launchDue(show, timeline, active, songMillis);
+                stepGroup(active);
+                active.releaseDead(); // hand faded fireworks' buffers to the pool
+            }
+
+            // creates layered bloom with trails while any firework is bursting,
+            // and clears to picture every frame otherwise
+            if (active.bursting() > 0) trail(pictureName);
+            else clear(pictureName);
+        }
+        // clear to picture after the last firework is nearly transparent
+        clear(pictureName);
+        FrameStats.dump(); // write the frame statistics if they are on
+    }
+
+    // Creates the fireworks of every entry that is due at the given song time
+    // and adds them to the fireworks in the air
+    private void launchDue(ShowFile show, ShowTimeline timeline,
+                           ActiveSet active, long songMillis) {
+        for (int entry = timeline.pollDue(songMillis); entry >= 0;
+             entry = timeline.pollDue(songMillis)) {
+            int first = show.getFirstRecord(entry);
+            ParticlePool.startGroup(); // the entry's fireworks share one arena
+            for (int i = 0; i < show.getGroupSize(entry); i++)
+                active.add(show.newFirework(first + i, random.split()));
+            ParticlePool.endGroup();
+        }
+    }
+
+    // Creates the fireworks of every entry launched by the given time step, in
+    // the same order as launchDue, and moves each to where it would be after
+    // that step, along with the bursts its stages would have spawned by then.
+    // Fireworks and bursts that would already have faded are not added.
+    private void seek(ShowFile show, ShowTimeline timeline, ActiveSet active,
+                      long stepsRun) {
+        long songMillis = stepsRun * FrameScheduler.STEP_MS;
+        ArrayList<Firework> bursts = new ArrayList<Firework>(); // spawned by stages
+        for (int entry = timeline.pollDue(songMillis); entry >= 0;
+             entry = timeline.pollDue(songMillis)) {
+            // the step at which the play loop would have launched the entry;
+            // entries due at the start are first stepped along with step 1
+            long launchStep = Math.max(1, (show.getLaunchMillis(entry)
+                    + FrameScheduler.STEP_MS - 1) / FrameScheduler.STEP_MS);
+            int steps = (int) (stepsRun - launchStep + 1);
+            int first = show.getFirstRecord(entry);
+            ParticlePool.startGroup();
+            for (int i = 0; i < show.getGroupSize(entry); i++) {
+                Firework fw = show.newFirework(first + i, random.split());
+                fw.seek(steps, bursts);
+                // a burst can outlive the firework it broke out of
+                if (fw.isDone()) fw.release();
+                else active.add(fw);
+                for (int j = 0; j < bursts.size(); j++) {
+                    if (bursts.get(j).isDone()) bursts.get(j).release();
+                    else active.add(bursts.get(j));
+                }
+                bursts.clear();
+            }
+            ParticlePool.endGroup();
+        }
+    }
+
+    // Draws firework launching upwards with initial velocities before burst
+    public void launch(Firework fw, String image) {
+        FrameScheduler clock = clock(); // paces the time steps
+        boolean launching = !fw.pastBurstPoint();
+        // loops as long as firework has not reached burst point
+        while (launching) {
+            fw.draw(renderer);
+            show();
+            // update positions once for every time step that is due, stopping
+            // at the burst point
+            int steps = stepsDue(clock);
+            for (int i = 0; i < steps && launching; i++) {
+                fw.moveParticles();
+                launching = !fw.pastBurstPoint();
+            }
+            clear(image); // clear to background image
+        }
+    }
+
+    // Draw exploding firework in bloom shape with new velocities
+    public void burst(Firework fw, String image) {
+        fw.prepareBurst(); // update all velocities to burst
+        sound("explosion.wav"); // bursting sound
+        FrameScheduler clock = clock(); // paces the time steps
+        // loops until firework is nearly transparent
+        while (fw.getColorAlpha() > 0.01) {
+            // display firework
+            fw.draw(renderer);
+            show();
+            // run every time step that is due, catching up after a slow frame
+            int steps = stepsDue(clock);
+            for (int i = 0; i < steps && fw.getColorAlpha() > 0.01; i++) {
+                fw.step(); // move, fade, and cull the particles
+            }
+            trail(image); // keep fading tails of the burst
+        }
+        clear(image); // clear to image
+    }
+
+    // Draws every live firework in a group and displays the frame
+    public void drawGroup(ActiveSet group) {
+        group.draw(renderer);
+        // displays fireworks after they are all drawn
+        show();
+    }
+
+    // Moves every firework in a group by one time step, bursting the ones that
+    // reach their burst point. Returns true if a firework burst in this step.
+    public boolean stepGroup(ActiveSet group) {
+        // each firework knows whether it is rising, bursting, or done
+        int bursts = group.step();
+        for (int i = 0; i < bursts; i++) {
+            sound("explosion.wav"); // plays explosion sound
+        }
+        return bursts > 0;
+    }
+
+    // Draws a group of fireworks launching all together and bursting.
+    // Needs symbol table of fireworks and a background image to clear to.
+    // The group's fireworks share an arena only if they were made between
+    // ParticlePool.startGroup() and endGroup(), as multipleLaunchBurst says.
+    public void launchBurst(ST<Integer, Firework> group, String image) {
+        launchBurst(new ActiveSet(group), image);
+    }
+
+    // Draws a group of fireworks launching all together and bursting, until
+    // every firework in the set has faded
+    public void launchBurst(ActiveSet group, String image) {
+        // tracks whether one of the fireworks in the groups exploded already
+        boolean hasOneBurst = false;
+
+        // paces the time steps so the group moves at a fixed speed
+        FrameScheduler clock = clock();
+
+        // draws motion of firework group until all fireworks are nearly transparent
+        while (!group.isEmpty()) {
+            drawGroup(group);
+
+            // runs every time step that is due, catching up after a slow frame
+            int steps = stepsDue(clock);
+            for (int step = 0; step < steps; step++) {
+                if (stepGroup(group)) hasOneBurst = true;
+                group.releaseDead(); // hand faded fireworks' buffers back
+            }
+
+            // clears to picture every frame when no firework has burst yet
+            if (!hasOneBurst) clear(image);
+
+            // creates layered bloom with trails once fireworks burst
+            else trail(image);
+        }
+        // clear to picture after fireworks are nearly transparent
+        clear(image);
+    }
+
+    // Releases the fireworks in the list that are done and returns the number
+    // still in the air
+    private static int releaseDone(ArrayList<Firework> fireworks) {
+        int live = 0;
+        for (Firework fw : fireworks) {
+            if (fw.isDone()) fw.release();
+            else live++;
+        }
+        return live;
+    }
+
+    // Simulates a show script with no window or audio, as fast as possible.
+    // Takes the script file name, an optional seed, and an optional number of
+    // threads for particle updates as arguments.
+    public static void main(String[] args) {
+        String fileName = args[0];
+        long seed = 126;
+        if (args.length > 1) seed = Long.parseLong(args[1]);
+        if (args.length > 2) ParticleWorkers.setThreads(Integer.parseInt(args[2]));
+
+        HeadlessRenderer renderer = new HeadlessRenderer();
+        long start = System.nanoTime();
+        new ShowEngine(renderer, seed, false).play(fileName);
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        double showSeconds = renderer.getFrames() * FrameScheduler.STEP_MS / 1000.0;
+
+        StdOut.println("Frames: " + renderer.getFrames());
+        StdOut.println("Particles drawn: " + renderer.getParticles());
+        StdOut.println("Sounds: " + renderer.getSounds());
+        StdOut.println("Particle buffers made: " + ParticlePool.getAllocated()
+                               + ", reused: " + ParticlePool.getReused()
+                               + ", arenas outside the heap: " + ParticlePool.getArenas());
+        StdOut.printf("Show time: %.1f s, simulated in %.3f s (%.0fx real time)%n",
+                      showSeconds, wallSeconds, showSeconds / wallSeconds);
+        StdOut.println("Checksum: " + Long.toHexString(renderer.getChecksum()));
+
+        // a second run with the same seed must produce the same frames
+        HeadlessRenderer replay = new HeadlessRenderer();
+        new ShowEngine(replay, seed, false).play(fileName);
+        StdOut.println("Deterministic: "
+                               + (replay.getChecksum() == renderer.getChecksum()));
+
+        // a firework that seeks ends where one that steps does, with as many
+        // bursts broken out of its stages, checked for the first record and
+        // the first record with stages
+        ShowFile show = ShowFile.open(fileName);
+        int staged = 0;
+        while (staged < show.getFireworks() - 1 && show.getStages(staged).length == 0)
+            staged++;
+        boolean samePhase = true;
+        double largest = 0.0; // largest difference in position
+        int[] records = staged == 0 ? new int[] { 0 } : new int[] { 0, staged };
+        for (int record : records) {
+            for (int steps = 0; steps <= 150; steps += 5) {
+                // the budget belongs to the JVM, so nothing else spawns meanwhile
+                int before = SpawnPool.getUsed();
+                ArrayList<Firework> stepped = new ArrayList<Firework>();
+                stepped.add(show.newFirework(record, new FireworkRandom(seed)));
+                for (int i = 0; i < steps; i++) {
+                    // bursts spawned in a step start moving in the next one
+                    for (int j = 0, n = stepped.size(); j < n; j++) {
+                        stepped.get(j).step();
+                        stepped.get(j).spawn(stepped);
+                    }
+                }
+                Firework a = stepped.get(0);
+                int steppedLive = releaseDone(stepped);
+                int steppedSpawned = SpawnPool.getUsed() - before;
+
+                ArrayList<Firework> sought = new ArrayList<Firework>();
+                Firework b = show.newFirework(record, new FireworkRandom(seed));
+                sought.add(b);
+                b.seek(steps, sought);
+                int soughtLive = releaseDone(sought);
+                int soughtSpawned = SpawnPool.getUsed() - before - steppedSpawned;
+
+                if (a.isLaunching() != b.isLaunching() || a.isDone() != b.isDone()
+                        || steppedLive != soughtLive || steppedSpawned != soughtSpawned)
+                    samePhase = false;
+                else if (!a.isDone()) {
+                    ParticleBuffer pa = a.getParticles(), pb = b.getParticles();
+                    if (pa.size() != pb.size() || pa.getColorAlpha(0) != pb.getColorAlpha(0))
+                        samePhase = false;
+                    for (int i = 0; i < Math.min(pa.size(), pb.size()); i++)
+                        largest = Math.max(largest,
+                                           Math.max(Math.abs(pa.getPx(i) - pb.getPx(i)),
+                                                    Math.abs(pa.getPy(i) - pb.getPy(i))));
+                }
+                if (record == staged && steps == 80 && show.getStages(staged).length > 0)
+                    StdOut.println("Record " + staged + " after 80 steps: " + soughtLive
+                                           + " fireworks in the air, " + soughtSpawned
+                                           + " spawned particles");
+                for (Firework fw : stepped) fw.release();
+                for (Firework fw : sought) fw.release();
+            }
+        }
+        StdOut.println("Seek matches stepping: " + samePhase); // should print true
+        StdOut.println("Largest position difference: " + largest); // rounding only
+
+        // starting halfway through plays only the second half
+        long half = renderer.getFrames() * FrameScheduler.STEP_MS / 2;
+        HeadlessRenderer second = new HeadlessRenderer();
+        start = System.nanoTime();
+        new ShowEngine(second, seed, false).play(fileName, half);
+        StdOut.printf("From %d ms: %d frames, simulated in %.3f s%n", half,
+                      second.getFrames(), (System.nanoTime() - start) / 1e9);
+        ParticleWorkers.setThreads(1);
+    }
+}
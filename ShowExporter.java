@@ -0,0 +1,214 @@
+/* This file renders a show to a numbered sequence of images instead of a
+   window, for playing on a projector later. The show is simulated with no
+   pacing, so it runs as fast as frames can be made, and every frame is drawn
+   with a RasterRenderer at the chosen resolution. Finished frames are copied
+   into a small set of spare images and encoded as PNG files (or written as
+   raw RGBA bytes) by a pool of worker threads while the next frames are
+   simulated. When every spare image is waiting to be written, the simulation
+   waits for one, so memory use stays flat however long the show is.
+
+   The physics always moves in steps of FrameScheduler.STEP_MS. For any other
+   frame rate, each output frame shows the simulated frame current at its
+   time, so frames are repeated or skipped as needed. Sounds are not
+   exported. Run it as
+
+       java ShowExporter FourthOfJuly.txt frames 1920 1080 30 png
+
+   to write frames/frame_000000.png and onwards. */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+public class ShowExporter implements Renderer {
+    private final RasterRenderer raster; // draws the frames
+    private final File directory; // where frames are written
+    private final double fps; // output frames per second
+    private final boolean png; // PNG files if true, raw RGBA if false
+    private final ExecutorService workers; // encode and write frames
+    private final ArrayBlockingQueue<BufferedImage> spare; // images free to fill
+    private final AtomicReference<IOException> failure =
+            new AtomicReference<IOException>(); // first write that failed
+    private long simulated; // frames simulated
+    private long written; // output frames handed to the workers
+
+    // Creates an exporter that writes frames of the given size and rate to the
+    // directory as PNG files, or as raw RGBA files if png is false, using the
+    // given number of worker threads
+    public ShowExporter(File directory, int width, int height, double fps,
+                        boolean png, int threads) {
+        if (fps <= 0) throw new IllegalArgumentException("Frame rate must be positive");
+        if (threads <= 0) throw new IllegalArgumentException("Need at least one thread");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalArgumentException("could not create '" + directory + "'");
+        raster = new RasterRenderer(width, height);
+        this.directory = directory;
+        this.fps = fps;
+        this.png = png;
+        ImageIO.setUseCache(false); // encode in memory, not through temporary files
+        workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "frame writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // two images per worker, so one can be filled while one is written
+        spare = new ArrayBlockingQueue<BufferedImage>(2 * threads);
+        for (int i = 0; i < 2 * threads; i++)
+            spare.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    // Clears the frame to the given background image
+    public void clear(String image) {
+        raster.clear(image);
+    }
+
+    // Starts a frame that keeps fading trails
+    public void trail(String image) {
+        raster.trail(image);
+    }
+
+    // Adds every particle into the frame
+    public void draw(ParticleBuffer particles) {
+        raster.draw(particles);
+    }
+
+    // Finishes the simulated frame and hands it to the workers once for every
+    // output frame that falls in its time step
+    public void show() {
+        BufferedImage frame = raster.render();
+        double stepsPerFrame = 1000.0 / (fps * FrameScheduler.STEP_MS);
+        // output frame n shows the simulated frame current at time n / fps
+        while ((long) (written * stepsPerFrame) <= simulated) {
+            write(frame, written);
+            written++;
+        }
+        simulated++;
+    }
+
+    // Ignores quality levels, since an exported show has all the time it needs
+    public void setQuality(int level) {
+    }
+
+    // Ignores sounds, which are not exported
+    public void play(String sound) {
+    }
+
+    // Copies the frame into a spare image and has a worker write it
+    private void write(BufferedImage frame, long number) {
+        BufferedImage copy;
+        try {
+            copy = spare.take(); // waits while every spare image is being written
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("export interrupted", e);
+        }
+        int[] from = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        int[] to = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+        System.arraycopy(from, 0, to, 0, from.length);
+
+        workers.execute(() -> {
+            try {
+                if (png) ImageIO.write(copy, "png", file(number, "png"));
+                else writeRgba(copy, file(number, "rgba"));
+            }
+            catch (IOException e) {
+                failure.compareAndSet(null, e);
+            }
+            finally {
+                spare.add(copy); // free for the next frame
+            }
+        });
+    }
+
+    // Returns the file for an output frame
+    private File file(long number, String extension) {
+        return new File(directory, String.format("frame_%06d.%s", number, extension));
+    }
+
+    // Writes the image as raw bytes: red, green, blue, and 255 for every pixel,
+    // row by row from the top
+    private static void writeRgba(BufferedImage image, File file) throws IOException {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        byte[] row = new byte[4 * image.getWidth()];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                int offset = y * image.getWidth();
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int pixel = pixels[offset + x];
+                    row[4 * x] = (byte) (pixel >> 16);
+                    row[4 * x + 1] = (byte) (pixel >> 8);
+                    row[4 * x + 2] = (byte) pixel;
+                    row[4 * x + 3] = (byte) 255;
+                }
+                out.write(row);
+            }
+        }
+    }
+
+    // Waits for every frame to be written and stops the workers. Throws an
+    // IllegalStateException if any frame could not be written.
+    public void finish() {
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting for the last frames
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("export interrupted", e);
+        }
+        if (failure.get() != null)
+            throw new IllegalStateException("could not write frames", failure.get());
+    }
+
+    // Returns the number of output frames written
+    public long getFramesWritten() {
+        return written;
+    }
+
+    // Returns the number of frames simulated
+    public long getFramesSimulated() {
+        return simulated;
+    }
+
+    // Renders a show to files. Takes the script, the output directory, the
+    // width, height, and frame rate, and optionally png or rgba and a seed.
+    public static void main(String[] args) {
+        String fileName = args[0];
+        File directory = new File(args[1]);
+        int width = Integer.parseInt(args[2]);
+        int height = Integer.parseInt(args[3]);
+        double fps = Double.parseDouble(args[4]);
+        boolean png = args.length <= 5 || !args[5].equals("rgba");
+        long seed = 126;
+        if (args.length > 6) seed = Long.parseLong(args[6]);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        ParticleWorkers.setThreads(cores);
+        ShowExporter exporter = new ShowExporter(directory, width, height, fps, png, cores);
+        long start = System.nanoTime();
+        new ShowEngine(exporter, seed, false).play(fileName);
+        exporter.finish();
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        double showSeconds = exporter.getFramesWritten() / fps;
+
+        StdOut.println("Frames written: " + exporter.getFramesWritten()
+                               + " (" + exporter.getFramesSimulated() + " simulated)");
+        StdOut.printf("Show time: %.1f s, rendered in %.1f s (%.2f of real time)%n",
+                      showSeconds, wallSeconds, wallSeconds / showSeconds);
+        ParticleWorkers.setThreads(1);
+    }
+}
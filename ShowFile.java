@@ -0,0 +1,324 @@
+/* This file reads compiled firework shows. A compiled show is a small binary
+   file made by ShowCompiler with a header, the song and background names, an
+   index of entries (a single firework or a group launched together) with the
+   time each entry is launched, and one fixed-size record per firework. The
+   file is memory-mapped and records are read straight from it by offset, so
+   playing a show never parses text.
+
+   Layout (all numbers big-endian):
+     header   magic "FWSH", version, entry count, firework count,
+              strings offset, index offset, records offset, stages offset
+     strings  song and background, each as a 2-byte length and UTF-8 bytes
+     index    for each entry: first record, number of records, launch time
+              in milliseconds from the start of the song (long)
+     records  for each firework: particles (int); px, py, vx, vy, ax, ay,
+              size (doubles); r, g, b (floats); burst shape, first stage,
+              number of stages (ints)
+     stages   for each BurstStage: parent, delay, spacing, shape, particles
+              (ints); r, g, b (floats) */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+public class ShowFile {
+    public static final int MAGIC = 0x46575348; // "FWSH"
+    public static final int VERSION = 4;
+    public static final int HEADER_BYTES = 32; // size of the header
+    public static final int INDEX_BYTES = 16; // size of one index entry
+    public static final int RECORD_BYTES = 84; // size of one firework record
+    public static final int STAGE_BYTES = 32; // size of one stage
+    // stages of every firework that has none
+    private static final BurstStage[] NO_STAGES = new BurstStage[0];
+
+    private final ByteBuffer data; // the whole compiled show
+    private final String song, background; // file names from the show
+    private final int entries, fireworks; // number of entries and fireworks
+    private final int indexOffset, recordsOffset; // where the tables start
+    private final int stagesOffset; // where the stages start
+
+    // Reads a show from a buffer holding a compiled show
+    public ShowFile(ByteBuffer data) {
+        this.data = data;
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("not a compiled firework show");
+        if (data.getInt(4) != VERSION)
+            throw new IllegalArgumentException("unsupported show version " + data.getInt(4));
+        entries = data.getInt(8);
+        fireworks = data.getInt(12);
+        if (entries < 0 || fireworks < 0)
+            throw new IllegalArgumentException("compiled show is truncated");
+        int stringsOffset = data.getInt(16);
+        indexOffset = data.getInt(20);
+        recordsOffset = data.getInt(24);
+        stagesOffset = data.getInt(28);
+        if (stringsOffset < HEADER_BYTES || indexOffset < 0 || recordsOffset < 0
+                || indexOffset + (long) entries * INDEX_BYTES > data.capacity()
+                || recordsOffset + (long) fireworks * RECORD_BYTES > stagesOffset
+                || stagesOffset > data.capacity())
+            throw new IllegalArgumentException("compiled show is truncated");
+
+        // read the two names that follow the header
+        int offset = stringsOffset;
+        song = readString(offset);
+        offset += 2 + (data.getShort(offset) & 0xFFFF);
+        background = readString(offset);
+
+        // every entry must name fireworks in the records, and every firework
+        // stages in the stages table, with the same limits ShowCompiler
+        // checks, so nothing read later is out of bounds or out of range
+        int stages = (data.capacity() - stagesOffset) / STAGE_BYTES;
+        for (int e = 0; e < entries; e++)
+            if (!fits(getFirstRecord(e), getGroupSize(e), fireworks))
+                throw new IllegalArgumentException("compiled show entry " + e
+                                                           + " is out of range");
+        for (int f = 0; f < fireworks; f++) {
+            if (!inRange(getParticles(f), 1, ShowCompiler.MAX_PARTICLES)
+                    || !inRange(getShape(f), 0, BurstShape.count() - 1))
+                throw new IllegalArgumentException("compiled show firework " + f
+                                                           + " is out of range");
+            int first = data.getInt(record(f) + 76);
+            int count = data.getInt(record(f) + 80);
+            if (!fits(first, count, stages) || count > BurstStage.MAX_STAGES)
+                throw new IllegalArgumentException("compiled show firework " + f
+                                                           + " has stages out of range");
+            for (int k = 0; k < count; k++)
+                if (!isStage(stagesOffset + (first + k) * STAGE_BYTES, k))
+                    throw new IllegalArgumentException("compiled show firework " + f
+                                                               + " has a bad stage " + k);
+        }
+    }
+
+    // Returns true if count items starting at first lie within a table of
+    // the given size
+    private static boolean fits(int first, int count, int size) {
+        return first >= 0 && count >= 0 && (long) first + count <= size;
+    }
+
+    // Returns true if value is between min and max, inclusive
+    private static boolean inRange(int value, int min, int max) {
+        return value >= min && value <= max;
+    }
+
+    // Returns true if the stage at the offset, the given one of its
+    // firework's stages, holds values ShowCompiler would have written: a
+    // parent that is the firework's burst or an earlier stage, a delay before
+    // the parent fades, and a known shape
+    private boolean isStage(int offset, int stage) {
+        return inRange(data.getInt(offset), 0, stage)
+                && inRange(data.getInt(offset + 4), 1, ShowCompiler.BURST_STEPS - 1)
+                && inRange(data.getInt(offset + 8), 1, ShowCompiler.MAX_PARTICLES)
+                && inRange(data.getInt(offset + 12), 0, BurstShape.count() - 1)
+                && inRange(data.getInt(offset + 16), 1, ShowCompiler.MAX_PARTICLES);
+    }
+
+    // Returns the UTF-8 string with a 2-byte length stored at the offset
+    private String readString(int offset) {
+        if (offset < 0 || offset + 2L > data.capacity()
+                || offset + 2L + (data.getShort(offset) & 0xFFFF) > data.capacity())
+            throw new IllegalArgumentException("compiled show is truncated");
+        int length = data.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = data.get(offset + 2 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Opens a show by file name. A compiled show is memory-mapped. A text
+    // script is played from its compiled copy (the same name ending in .show)
+    // if that copy is up to date, and is compiled in memory otherwise, so
+    // every script is checked completely before the show starts.
+    public static ShowFile open(String fileName) {
+        File file = new File(fileName);
+        if (isCompiled(file)) return new ShowFile(map(file));
+
+        File compiled = new File(compiledName(fileName));
+        if (compiled.isFile() && compiled.lastModified() >= file.lastModified()
+                && isCompiled(compiled) && isCurrent(compiled))
+            return new ShowFile(map(compiled));
+        return new ShowFile(ShowCompiler.compile(fileName));
+    }
+
+    // Returns the name of the compiled copy of a text script
+    public static String compiledName(String scriptName) {
+        int dot = scriptName.lastIndexOf('.');
+        if (dot < 0) return scriptName + ".show";
+        return scriptName.substring(0, dot) + ".show";
+    }
+
+    // Returns true if the file starts with the compiled-show magic number
+    private static boolean isCompiled(File file) {
+        if (!file.isFile() || file.length() < HEADER_BYTES) return false;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.readInt() == MAGIC;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Returns true if the compiled show has the version this class reads, so
+    // copies compiled by an older version are compiled again
+    private static boolean isCurrent(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readInt(); // magic
+            return in.readInt() == VERSION;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Maps the whole file into memory, read-only
+    private static ByteBuffer map(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not map show '" + file + "'", e);
+        }
+    }
+
+    // Returns the file name of the show's song
+    public String getSong() {
+        return song;
+    }
+
+    // Returns the file name of the show's background image
+    public String getBackground() {
+        return background;
+    }
+
+    // Returns the number of entries (single fireworks and groups) in the show
+    public int getEntries() {
+        return entries;
+    }
+
+    // Returns the number of fireworks in the show
+    public int getFireworks() {
+        return fireworks;
+    }
+
+    // Returns the record of the first firework of an entry
+    public int getFirstRecord(int entry) {
+        return data.getInt(indexOffset + entry * INDEX_BYTES);
+    }
+
+    // Returns the number of fireworks launched together in an entry
+    public int getGroupSize(int entry) {
+        return data.getInt(indexOffset + entry * INDEX_BYTES + 4);
+    }
+
+    // Returns the time an entry is launched, in milliseconds from the start
+    // of the song
+    public long getLaunchMillis(int entry) {
+        return data.getLong(indexOffset + entry * INDEX_BYTES + 8);
+    }
+
+    // Returns the byte offset of a firework record
+    private int record(int record) {
+        return recordsOffset + record * RECORD_BYTES;
+    }
+
+    // Returns the number of particles of a firework
+    public int getParticles(int record) {
+        return data.getInt(record(record));
+    }
+
+    // Returns one of the seven doubles of a firework record: 0 px, 1 py, 2 vx,
+    // 3 vy, 4 ax, 5 ay, 6 size
+    private double getDouble(int record, int field) {
+        return data.getDouble(record(record) + 4 + 8 * field);
+    }
+
+    // Returns one of the three colors of a firework record: 0 r, 1 g, 2 b
+    private float getColor(int record, int channel) {
+        return data.getFloat(record(record) + 60 + 4 * channel);
+    }
+
+    // Returns the BurstShape of a firework
+    public int getShape(int record) {
+        return data.getInt(record(record) + 72);
+    }
+
+    // Returns the stages of a firework, in order
+    public BurstStage[] getStages(int record) {
+        int count = data.getInt(record(record) + 80);
+        if (count == 0) return NO_STAGES;
+        int first = data.getInt(record(record) + 76);
+        BurstStage[] stages = new BurstStage[count];
+        for (int k = 0; k < stages.length; k++) {
+            int offset = stagesOffset + (first + k) * STAGE_BYTES;
+            stages[k] = new BurstStage(data.getInt(offset), data.getInt(offset + 4),
+                                       data.getInt(offset + 8), data.getInt(offset + 12),
+                                       data.getInt(offset + 16), data.getFloat(offset + 20),
+                                       data.getFloat(offset + 24),
+                                       data.getFloat(offset + 28));
+        }
+        return stages;
+    }
+
+    // Creates the firework stored in a record, taking its randomness from the
+    // given stream
+    public Firework newFirework(int record, FireworkRandom random) {
+        return new Firework(getParticles(record),
+                            getDouble(record, 0), getDouble(record, 1),
+                            getDouble(record, 2), getDouble(record, 3),
+                            getDouble(record, 4), getDouble(record, 5),
+                            getDouble(record, 6),
+                            getColor(record, 0), getColor(record, 1),
+                            getColor(record, 2), getShape(record),
+                            getStages(record), random);
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        ShowFile show = open(args.length > 0 ? args[0] : "FourthOfJuly.txt");
+        StdOut.println("Song: " + show.getSong());
+        StdOut.println("Background: " + show.getBackground());
+        StdOut.println("Entries: " + show.getEntries());
+        StdOut.println("Fireworks: " + show.getFireworks());
+        for (int e = 0; e < Math.min(3, show.getEntries()); e++) {
+            int first = show.getFirstRecord(e);
+            StdOut.println("Entry " + e + " at " + show.getLaunchMillis(e) + " ms: "
+                                   + show.getGroupSize(e) + " firework(s), first has "
+                                   + show.getParticles(first) + " particles, "
+                                   + BurstShape.name(show.getShape(first)) + ", "
+                                   + show.getStages(first).length + " stage(s)");
+        }
+
+        // an entry that runs past the last firework is refused when opened
+        ByteBuffer broken = ShowCompiler.compile("FourthOfJuly.txt");
+        broken.putInt(broken.getInt(20) + 4, broken.getInt(12) + 1);
+        try {
+            new ShowFile(broken);
+        }
+        catch (IllegalArgumentException e) {
+            StdOut.println("Bad entry: " + e.getMessage());
+            // should print compiled show entry 0 is out of range
+        }
+
+        // so are a firework with no particles and a stage with no delay
+        broken = ShowCompiler.compile("FourthOfJuly.txt");
+        broken.putInt(broken.getInt(24), 0);
+        try {
+            new ShowFile(broken);
+        }
+        catch (IllegalArgumentException e) {
+            StdOut.println("Bad firework: " + e.getMessage());
+            // should print compiled show firework 0 is out of range
+        }
+        broken = ShowCompiler.compile("StageDemo.txt");
+        broken.putInt(broken.getInt(28) + 4, 0); // delay of the first stage
+        try {
+            new ShowFile(broken);
+        }
+        catch (IllegalArgumentException e) {
+            StdOut.println("Bad stage: " + e.getMessage());
+            // should print compiled show firework 0 has a bad stage 0
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/* This file keeps the launches of a show in the order they happen. Every entry
+   of a compiled show becomes a launch event keyed by its launch time in
+   milliseconds from the start of the song, and the events wait in a priority
+   queue. Each time step the show engine takes out every event that is due,
+   however many there are, so entries can overlap and fireworks launch in time
+   with the music rather than after the previous firework has faded. */
+
+import java.util.PriorityQueue;
+
+public class ShowTimeline {
+    // One entry of the show waiting to be launched
+    private static class LaunchEvent implements Comparable<LaunchEvent> {
+        private final long millis; // launch time from the start of the song
+        private final int entry; // entry of the show to launch
+
+        private LaunchEvent(long millis, int entry) {
+            this.millis = millis;
+            this.entry = entry;
+        }
+
+        // Orders events by launch time, then by their order in the show
+        public int compareTo(LaunchEvent that) {
+            if (this.millis != that.millis) return Long.compare(this.millis, that.millis);
+            return Integer.compare(this.entry, that.entry);
+        }
+    }
+
+    private final PriorityQueue<LaunchEvent> events; // launches still to come
+
+    // Creates a timeline holding every entry of the show
+    public ShowTimeline(ShowFile show) {
+        events = new PriorityQueue<LaunchEvent>(Math.max(1, show.getEntries()));
+        for (int entry = 0; entry < show.getEntries(); entry++)
+            events.add(new LaunchEvent(show.getLaunchMillis(entry), entry));
+    }
+
+    // Returns true if every entry has been launched
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    // Returns the number of entries still to be launched
+    public int size() {
+        return events.size();
+    }
+
+    // Returns the launch time of the next entry, in milliseconds from the start
+    // of the song
+    public long nextLaunchMillis() {
+        if (events.isEmpty()) throw new IllegalStateException("No launches left");
+        return events.peek().millis;
+    }
+
+    // Removes and returns the next entry due at or before the given time, or
+    // returns -1 if no entry is due yet
+    public int pollDue(long millis) {
+        LaunchEvent next = events.peek();
+        if (next == null || next.millis > millis) return -1;
+        events.poll();
+        return next.entry;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        ShowTimeline timeline = new ShowTimeline(ShowFile.open("FourthOfJuly.txt"));
+        StdOut.println("Entries: " + timeline.size());
+
+        // entries come out in launch order, only once they are due
+        StdOut.println("Due at 0 ms: " + timeline.pollDue(0)); // should print 0
+        StdOut.println("Due again at 0 ms: " + timeline.pollDue(0)); // should print -1
+        long last = 0;
+        boolean ordered = true;
+        while (!timeline.isEmpty()) {
+            long millis = timeline.nextLaunchMillis();
+            if (millis < last) ordered = false;
+            last = millis;
+            timeline.pollDue(millis);
+        }
+        StdOut.println("In order: " + ordered); // should print true
+        StdOut.println("Last launch: " + last + " ms");
+    }
+}
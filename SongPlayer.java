@@ -0,0 +1,154 @@
+/* This file plays a show's song from memory. The AssetManager loads the song
+   of every show while the welcome screen shows: the file is read once and
+   kept exactly as it is on disk, so the song keeps its own sample rate,
+   channels, and sample size, and takes no more memory than its file. Playing
+   it opens an output line in the song's own format and writes the song to it
+   from memory on a thread of its own, next to the AudioMixer's line for the
+   effects, so starting a show never waits for the disk.
+
+   At most MAX_BYTES of songs are kept. When loading another song would pass
+   that, the song played or loaded longest ago is dropped; if it is played
+   again it is streamed from disk with StdAudio, as every song used to be. */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+public class SongPlayer {
+    // most bytes of song files kept in memory, about three minutes of
+    // CD-quality stereo
+    public static final int MAX_BYTES = 32 << 20;
+
+    // song files by name, from the one used longest ago to the latest
+    private static final LinkedHashMap<String, byte[]> songs =
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private static long bytes; // bytes of song files kept
+
+    // Reads a song file into memory ahead of time. Returns false if it is
+    // missing, is not a sound file Java can read, or is larger than
+    // MAX_BYTES, in which case it is not kept.
+    public static boolean load(String name) {
+        synchronized (SongPlayer.class) {
+            if (songs.get(name) != null) return true;
+        }
+        byte[] file = read(name);
+        if (file == null) return false;
+        try {
+            AudioSystem.getAudioFileFormat(new ByteArrayInputStream(file)); // a sound?
+        }
+        catch (IOException | UnsupportedAudioFileException e) {
+            return false;
+        }
+
+        synchronized (SongPlayer.class) {
+            byte[] replaced = songs.put(name, file);
+            bytes += file.length - (replaced == null ? 0 : replaced.length);
+            // drop the songs used longest ago until the rest fit; the song just
+            // loaded is the latest and fits on its own, so it is never dropped
+            Iterator<Map.Entry<String, byte[]>> oldest = songs.entrySet().iterator();
+            while (bytes > MAX_BYTES) {
+                bytes -= oldest.next().getValue().length;
+                oldest.remove();
+            }
+        }
+        return true;
+    }
+
+    // Reads a whole file from the file system or the classpath, or returns
+    // null if there is none or it is larger than MAX_BYTES
+    private static byte[] read(String name) {
+        File file = new File(name);
+        try (InputStream in = file.isFile() ? file.toURI().toURL().openStream()
+                                            : SongPlayer.class.getResourceAsStream("/" + name)) {
+            if (in == null) return null;
+            byte[] data = in.readNBytes(MAX_BYTES + 1);
+            if (data.length > MAX_BYTES) return null;
+            return data;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Starts playing a song loaded ahead of time on its own output line, in
+    // the song's own format, and returns at once. Returns false if the song
+    // was not loaded or cannot be played on this machine, in which case
+    // nothing is played.
+    public static boolean play(String name) {
+        byte[] file;
+        synchronized (SongPlayer.class) {
+            file = songs.get(name); // also marks it as the latest used
+        }
+        if (file == null) return false;
+        try {
+            AudioInputStream song = AudioSystem.getAudioInputStream(new ByteArrayInputStream(file));
+            AudioFormat format = song.getFormat();
+            SourceDataLine line = AudioSystem.getSourceDataLine(format);
+            line.open(format);
+            line.start();
+            Thread thread = new Thread(() -> stream(song, line), "song player");
+            thread.setDaemon(true); // never keeps the program alive
+            thread.start();
+            return true;
+        }
+        catch (IOException | UnsupportedAudioFileException | LineUnavailableException
+               | IllegalArgumentException | SecurityException e) {
+            return false;
+        }
+    }
+
+    // Writes the song to the line until it ends, then lets the line play what
+    // it holds and closes it. Writing blocks while the line is full, which
+    // paces the thread to the speaker.
+    private static void stream(AudioInputStream song, SourceDataLine line) {
+        int frame = Math.max(1, song.getFormat().getFrameSize());
+        byte[] buffer = new byte[Math.max(frame, 8192 / frame * frame)]; // whole frames
+        try {
+            for (int n = song.read(buffer); n > 0; n = song.read(buffer))
+                line.write(buffer, 0, n);
+            line.drain();
+        }
+        catch (IOException e) {
+            // the song is in memory, so this cannot happen; stop playing it
+        }
+        finally {
+            line.close();
+        }
+    }
+
+    // Returns true if the song is kept in memory
+    public static synchronized boolean isLoaded(String name) {
+        return songs.containsKey(name);
+    }
+
+    // Returns the number of bytes of song files kept in memory
+    public static synchronized long bytes() {
+        return bytes;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // the song is kept as its file, in its own format
+        StdOut.println("Anthem loaded: " + load("NationalAnthem.wav")); // should print true
+        StdOut.println("Bytes kept: " + bytes()); // should print 661620, the file's size
+        StdOut.println("Loaded twice: " + load("NationalAnthem.wav")); // should print true
+        StdOut.println("Bytes kept: " + bytes()); // should print 661620
+        StdOut.println("Missing song: " + load("missing.wav")); // should print false
+        StdOut.println("Not a sound: " + load("sky.jpeg")); // should print false
+
+        // songs that were not loaded are left to StdAudio
+        StdOut.println("Unloaded song played: " + play("EDMsong.wav")); // should print false
+        // true if there is a sound card
+        StdOut.println("Anthem played: " + play("NationalAnthem.wav"));
+    }
+}
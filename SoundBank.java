@@ -0,0 +1,98 @@
+/* This file loads short sound effects once and keeps them in memory. Each WAV
+   file is decoded the first time it is asked for and converted to 16-bit mono
+   PCM at the mixer's sample rate, so playing it again costs nothing but a
+   lookup. Sounds longer than MAX_SECONDS, such as a show's song, are not kept
+   and are left to be streamed instead. */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+public class SoundBank {
+    // samples per second of every decoded sound
+    public static final int SAMPLE_RATE = 44100;
+    // format every sound is converted to: 16-bit signed little-endian mono
+    public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+    // longest sound kept in memory
+    public static final double MAX_SECONDS = 5.0;
+
+    // no samples, stored for sounds that could not be kept so they are only
+    // tried once
+    private static final short[] NONE = new short[0];
+
+    // decoded samples by file name
+    private static final ConcurrentHashMap<String, short[]> sounds =
+            new ConcurrentHashMap<String, short[]>();
+
+    // Returns the samples of a sound effect, decoding the file the first time.
+    // Returns null if the file is missing, cannot be decoded, or is too long.
+    public static short[] get(String name) {
+        short[] samples = sounds.computeIfAbsent(name, SoundBank::decode);
+        if (samples == NONE) return null;
+        return samples;
+    }
+
+    // Decodes a sound file from the file system or the classpath into samples,
+    // or returns NONE if it cannot be kept
+    private static short[] decode(String name) {
+        try (InputStream file = open(name)) {
+            if (file == null) return NONE;
+            try (AudioInputStream source = AudioSystem.getAudioInputStream(file);
+                 AudioInputStream pcm = AudioSystem.getAudioInputStream(FORMAT, source)) {
+                return read(pcm);
+            }
+        }
+        catch (IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+            return NONE;
+        }
+    }
+
+    // Opens a sound file by name, or returns null if there is none
+    private static InputStream open(String name) throws IOException {
+        File file = new File(name);
+        InputStream in;
+        if (file.isFile()) in = file.toURI().toURL().openStream();
+        else in = SoundBank.class.getResourceAsStream("/" + name);
+        if (in == null) return null;
+        return new BufferedInputStream(in); // audio parsing needs mark/reset
+    }
+
+    // Reads converted 16-bit samples, or returns NONE if there are too many
+    private static short[] read(AudioInputStream pcm) throws IOException {
+        long limit = (long) (MAX_SECONDS * SAMPLE_RATE) * 2;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n = pcm.read(buffer); n >= 0; n = pcm.read(buffer)) {
+            bytes.write(buffer, 0, n);
+            if (bytes.size() > limit) return NONE;
+        }
+        byte[] data = bytes.toByteArray();
+        short[] samples = new short[data.length / 2];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = (short) ((data[2 * i] & 0xFF) | (data[2 * i + 1] << 8));
+        return samples;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        short[] explosion = get("explosion.wav");
+        double first = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        short[] again = get("explosion.wav");
+        double second = (System.nanoTime() - start) / 1e6;
+
+        StdOut.printf("Explosion: %.2f s of samples%n", explosion.length / (double) SAMPLE_RATE);
+        StdOut.printf("First load %.2f ms, second load %.4f ms%n", first, second);
+        StdOut.println("Same samples: " + (explosion == again)); // should print true
+        StdOut.println("Song kept: " + (get("NationalAnthem.wav") != null)); // should print false
+        StdOut.println("Missing file: " + get("missing.wav")); // should print null
+    }
+}
@@ -0,0 +1,150 @@
+/* This file keeps the particle budget that every stage of every multi-stage
+   firework spawns its small bursts from. The budget is a fixed number of
+   particles, shared by the whole show, so a cascading finale can never have
+   more spawned particles in the air than the budget allows, however many
+   stages break at once; since every particle costs about the same to move,
+   fade, and draw, this also bounds the time they take each frame. A stage
+   reserves its particles before it breaks, and they return to the budget
+   when its bursts have faded.
+
+   When a stage wants more particles than are left, the overflow policy
+   decides what happens:
+
+     drop   only as many small bursts break as fit, spread evenly over the
+            particles that would have broken; the rest break into nothing
+     merge  neighbouring particles are merged, each group breaking as one
+            small burst from its average position and velocity, so the
+            whole shape still breaks but with fewer bursts
+
+   The budget is set with -Dfireworks.spawn.budget (50,000 particles by
+   default) and the policy with -Dfireworks.spawn.overflow (merge by
+   default). The particles themselves come from the ParticlePool.
+
+   Like the ParticlePool, the budget belongs to the whole JVM, not to one
+   ShowEngine: only one show may play at a time, and the budget can only be
+   changed while no bursts are in the air. */
+
+public class SpawnPool {
+    // overflow policies
+    public static final int DROP = 0;
+    public static final int MERGE = 1;
+
+    private static int capacity = Integer.getInteger("fireworks.spawn.budget", 50000);
+    private static int policy =
+            "drop".equals(System.getProperty("fireworks.spawn.overflow")) ? DROP : MERGE;
+    private static int used; // particles reserved by bursts in the air
+    private static long dropped; // small bursts that did not break for lack of room
+    private static long merged; // small bursts merged into others for lack of room
+
+    // Sets the number of particles all stages may have in the air at once and
+    // the overflow policy, DROP or MERGE. Throws an IllegalStateException if
+    // bursts still hold particles from the budget, as while a show plays.
+    public static synchronized void configure(int capacity, int policy) {
+        if (capacity < 0) throw new IllegalArgumentException("Budget must be non-negative");
+        if (policy != DROP && policy != MERGE)
+            throw new IllegalArgumentException("Unknown overflow policy " + policy);
+        if (used != 0)
+            throw new IllegalStateException("Spawn budget cannot change while "
+                                                    + used + " particles are in the air");
+        SpawnPool.capacity = capacity;
+        SpawnPool.policy = policy;
+    }
+
+    // Reserves room for small bursts of the given size out of the given
+    // number of particles, and returns how many bursts may break: all of them
+    // if there is room, and otherwise as many as fit
+    public static synchronized int reserve(int spawners, int each) {
+        int bursts = (int) Math.min(spawners, (capacity - used) / (long) each);
+        if (bursts < spawners) {
+            if (policy == DROP || bursts == 0) dropped += spawners - bursts;
+            else merged += spawners - bursts;
+        }
+        used += bursts * each;
+        return bursts;
+    }
+
+    // Returns the given number of particles to the budget once their bursts
+    // have faded
+    public static synchronized void release(int particles) {
+        used -= particles;
+    }
+
+    // Returns true if bursts that do not fit are merged rather than dropped
+    public static synchronized boolean merges() {
+        return policy == MERGE;
+    }
+
+    // Returns the number of particles all stages may have in the air at once
+    public static synchronized int getCapacity() {
+        return capacity;
+    }
+
+    // Returns the number of particles reserved by bursts in the air
+    public static synchronized int getUsed() {
+        return used;
+    }
+
+    // Returns the number of small bursts that did not break for lack of room
+    public static synchronized long getDropped() {
+        return dropped;
+    }
+
+    // Returns the number of small bursts merged into others for lack of room
+    public static synchronized long getMerged() {
+        return merged;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        configure(1000, DROP);
+        StdOut.println("Bursts: " + reserve(100, 6)); // should print 100
+        StdOut.println("Bursts: " + reserve(100, 6)); // should print 66
+        StdOut.println("Used: " + getUsed()); // should print 996
+        StdOut.println("Dropped: " + getDropped()); // should print 34
+        release(600);
+        try {
+            configure(1000, MERGE);
+        }
+        catch (IllegalStateException e) {
+            StdOut.println("Configure in the air: " + e.getMessage());
+            // should print Spawn budget cannot change while 396 particles are in the air
+        }
+        release(getUsed());
+        configure(1000, MERGE);
+        StdOut.println("Bursts: " + reserve(200, 6)); // should print 166
+        StdOut.println("Merged: " + getMerged()); // should print 34
+        release(getUsed());
+
+        // a cascading finale: 20 shells of 1000 particles, each particle
+        // breaking into 20, and each of those into 20 again, would need
+        // 8 million particles
+        for (int policy = DROP; policy <= MERGE; policy++) {
+            configure(50000, policy);
+            BurstStage[] stages = {
+                    new BurstStage(0, 10, 1, BurstShape.RING, 20, 1.0F, 0.8F, 0.2F),
+                    new BurstStage(1, 10, 1, BurstShape.SPHERE, 20, 1.0F, 1.0F, 1.0F)
+            };
+            FireworkRandom random = new FireworkRandom(126);
+            ActiveSet finale = new ActiveSet();
+            for (int i = 0; i < 20; i++) {
+                finale.add(new Firework(1000, -5 + i * 0.5, -10, 0.0, 0.69, 0, -0.014,
+                                        0.05, 1.0F, 0.1F, 0.0F, BurstShape.SPHERE,
+                                        stages, random.split()));
+            }
+            int most = 0; // most particles spawned at once
+            int bursts = 0;
+            long start = System.nanoTime();
+            while (!finale.isEmpty()) {
+                bursts += finale.step();
+                most = Math.max(most, getUsed());
+                finale.releaseDead();
+            }
+            StdOut.printf("%s: %d bursts, at most %d spawned particles, %.0f ms%n",
+                          policy == DROP ? "drop" : "merge", bursts, most,
+                          (System.nanoTime() - start) / 1e6);
+            // at most 50000 either way
+            StdOut.println("Spawned after the finale: " + getUsed()); // should print 0
+        }
+        StdOut.println("Dropped: " + getDropped() + ", merged: " + getMerged());
+    }
+}
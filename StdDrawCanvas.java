@@ -0,0 +1,98 @@
+/* This file lets other renderers put a finished frame into the StdDraw window.
+   StdDraw only draws shapes, text, and pictures loaded from files, and keeps
+   its offscreen drawing surface private, so the surface is looked up by
+   reflection (every time, since StdDraw replaces it when the canvas size
+   changes). A renderer can then copy a whole frame onto it with one image
+   draw and display it with StdDraw.show(), or turn off antialiasing for the
+   shapes StdDraw draws. */
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
+
+public class StdDrawCanvas {
+    private static Field offscreen; // StdDraw's field for its offscreen surface
+    private static boolean looked; // whether the field was looked up already
+
+    // Returns StdDraw's offscreen surface, or null if it cannot be reached
+    private static synchronized Graphics2D offscreen() {
+        if (!looked) {
+            looked = true;
+            try {
+                offscreen = StdDraw.class.getDeclaredField("offscreen");
+                offscreen.setAccessible(true);
+            }
+            catch (ReflectiveOperationException | RuntimeException e) {
+                offscreen = null; // some other version of StdDraw
+            }
+        }
+        if (offscreen == null) return null;
+        try {
+            return (Graphics2D) offscreen.get(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Returns true if frames can be copied into the StdDraw window
+    public static boolean isAvailable() {
+        return offscreen() != null;
+    }
+
+    // Returns the width of the StdDraw canvas in pixels
+    public static int width() {
+        return intField("width", 512);
+    }
+
+    // Returns the height of the StdDraw canvas in pixels
+    public static int height() {
+        return intField("height", 512);
+    }
+
+    // Returns the value of one of StdDraw's private int fields, or the default
+    // if it cannot be read
+    private static int intField(String name, int otherwise) {
+        try {
+            Field field = StdDraw.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.getInt(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return otherwise;
+        }
+    }
+
+    // Turns antialiasing of the shapes StdDraw draws on or off. Returns false
+    // if the canvas cannot be reached, in which case shapes stay antialiased.
+    public static boolean setAntialiasing(boolean on) {
+        Graphics2D surface = offscreen();
+        if (surface == null) return false;
+        surface.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                 on ? RenderingHints.VALUE_ANTIALIAS_ON
+                                    : RenderingHints.VALUE_ANTIALIAS_OFF);
+        return true;
+    }
+
+    // Copies the image over the whole canvas without displaying it yet
+    public static void draw(BufferedImage image) {
+        Graphics2D surface = offscreen();
+        if (surface == null)
+            throw new IllegalStateException("StdDraw's canvas cannot be reached");
+        surface.drawImage(image, 0, 0, width(), height(), null);
+    }
+
+    // Copies the frame over the whole canvas and displays it
+    public static void present(BufferedImage frame) {
+        draw(frame);
+        StdDraw.show();
+    }
+
+    // Draws a background or menu picture on the canvas, taken already decoded
+    // and placed from the BackgroundCache when the canvas can be reached
+    public static void picture(String fileName) {
+        if (isAvailable()) draw(BackgroundCache.image(fileName, width(), height()));
+        else StdDraw.picture(0, 0, fileName);
+    }
+}
@@ -0,0 +1,74 @@
+/* This file draws a firework show in the StdDraw window and plays its sounds
+   with the AudioMixer, the SongPlayer, and StdAudio. Each particle is drawn
+   as a filled circle in its shared cached color. Trails come from clearing
+   only every fifth frame, so the particles of the frames in between stay on
+   the screen. At lower quality levels it draws fewer particles, as squares
+   without antialiasing, and clears more often so trails are shorter. */
+
+public class StdDrawRenderer implements Renderer {
+    // frames between clears at full quality, which sets the trail length
+    private static final int TRAIL_FRAMES = 5;
+
+    private int trailFrames; // frames with trails since the last clear
+    private int stride = 1; // step between drawn particles
+    private boolean squares; // whether particles are drawn as squares
+    private int trailPeriod = TRAIL_FRAMES; // frames between clears
+
+    // Clears the frame to the given background image, using the cached
+    // scaled copy when the canvas can be reached
+    public void clear(String image) {
+        StdDrawCanvas.picture(image);
+        trailFrames = 0;
+    }
+
+    // Clears the frame only every few frames to create tails
+    public void trail(String image) {
+        if (trailFrames % trailPeriod == 0) StdDrawCanvas.picture(image);
+        trailFrames++;
+    }
+
+    // Draws every particle as a filled circle, or only some of them as
+    // squares at lower quality
+    public void draw(ParticleBuffer particles) {
+        for (int i = 0; i < particles.size(); i += stride) {
+            StdDraw.setPenColor(ColorCache.get(particles.getRed(i), particles.getGreen(i),
+                                               particles.getBlue(i),
+                                               particles.getColorAlpha(i)));
+            if (squares)
+                StdDraw.filledSquare(particles.getPx(i), particles.getPy(i),
+                                     particles.getSize(i));
+            else
+                StdDraw.filledCircle(particles.getPx(i), particles.getPy(i),
+                                     particles.getSize(i));
+        }
+    }
+
+    // Displays the finished frame, with the frame statistics over it if the
+    // HUD is on
+    public void show() {
+        if (FrameStats.HUD) {
+            StdDraw.setPenColor(StdDraw.WHITE);
+            String[] lines = FrameStats.hudLines();
+            for (int i = 0; i < lines.length; i++)
+                StdDraw.textLeft(-9.8, 9.6 - 0.5 * i, lines[i]);
+        }
+        StdDraw.show();
+    }
+
+    // Draws fewer particles, as squares, with shorter trails at lower levels.
+    // Squares are only cheaper than circles once antialiasing is off, so
+    // circles are kept if it cannot be turned off.
+    public void setQuality(int level) {
+        stride = QualityGovernor.particleStride(level);
+        squares = QualityGovernor.cheapShapes(level) && StdDrawCanvas.setAntialiasing(false);
+        if (!squares) StdDrawCanvas.setAntialiasing(true);
+        trailPeriod = Math.max(1, (int) (TRAIL_FRAMES * QualityGovernor.trailLength(level)));
+    }
+
+    // Starts playing the given sound file. Short effects are mixed on the
+    // audio thread, songs loaded ahead of time play from memory on their own
+    // line, and other long sounds are streamed with StdAudio.
+    public void play(String sound) {
+        if (!AudioMixer.play(sound) && !SongPlayer.play(sound)) StdAudio.play(sound);
+    }
+}
@@ -0,0 +1,160 @@
+/* This file gives the JMH benchmarks, which must live in a named package,
+   access to the show's classes in the default package. It builds Particle
+   objects and firework groups the same way the show does and runs one hot path
+   per call. Every firework is made from one seeded random stream so that runs
+   are repeatable, and frames are drawn with a HeadlessRenderer so nothing
+   needs a window. */
+
+import fireworks.bench.Workload;
+
+public class ShowWorkload implements Workload {
+    private Particle[] particles; // particles as one object each
+    private ParticleBuffer buffer; // the same particles in one buffer
+    private Firework[] fireworks; // the same particles as fireworks
+    private ActiveSet group; // the same fireworks as a group in the air
+    private FireworkRandom random; // stream the gaussian benchmarks draw from
+    private double[] gaussians; // one gaussian number for every particle
+    private ShowEngine engine; // runs group frames with no window or pacing
+    private int particleCount, groupSize; // size of the workload
+    private long seed; // seed of the random stream
+
+    // Builds the particles and fireworks for a run
+    public void setUp(int particles, int groupSize, long seed) {
+        this.particleCount = particles;
+        this.groupSize = groupSize;
+        this.seed = seed;
+        resetParticles();
+        buffer = fill(new ParticleBuffer(particles, new FireworkRandom(seed)));
+        random = new FireworkRandom(seed);
+        gaussians = new double[particles];
+        engine = new ShowEngine(new HeadlessRenderer(), seed, false);
+        newGroup();
+    }
+
+    // Builds the Particle objects at full opacity from the seed
+    public void resetParticles() {
+        StdRandom.setSeed(seed); // Particle still takes its variation from StdRandom
+        particles = new Particle[particleCount];
+        for (int i = 0; i < particleCount; i++) {
+            particles[i] = new Particle(0, -10, 0.1, 0.69, 0, -0.014, 0.1,
+                                        1.0F, 0.1F, 0.0F);
+        }
+    }
+
+    // Adds every particle to an empty buffer and returns it
+    private ParticleBuffer fill(ParticleBuffer buffer) {
+        for (int i = 0; i < particleCount; i++) {
+            buffer.add(0, -10, 0.1, 0.69, 0, -0.014, 0.1, 1.0F, 0.1F, 0.0F);
+        }
+        return buffer;
+    }
+
+    // Creates a group of fireworks that share the particles evenly and are
+    // about to burst, made as one group the way multipleLaunchBurst expects
+    private void newGroup() {
+        FireworkRandom random = new FireworkRandom(seed);
+        fireworks = new Firework[groupSize];
+        group = new ActiveSet();
+        int each = Math.max(1, particleCount / groupSize);
+        ParticlePool.startGroup(); // one arena for the group with -Dfireworks.offheap=true
+        for (int i = 0; i < groupSize; i++) {
+            fireworks[i] = new Firework(each, -10 + 20.0 * i / groupSize, -10,
+                                        0.0, 0.69, 0, -0.014, 0.1,
+                                        1.0F, 0.1F, 0.0F, random);
+            group.add(fireworks[i]);
+        }
+        ParticlePool.endGroup();
+    }
+
+    // Calls Particle.updatePosition() on every Particle object
+    public double particleUpdatePosition() {
+        for (int i = 0; i < particles.length; i++) {
+            particles[i].updatePosition();
+        }
+        return particles[particles.length - 1].getPy();
+    }
+
+    // Calls Particle.updateColor(0.9) on every Particle object. Once the
+    // particles have faded below a thousandth, which happens every 66 calls,
+    // they are rebuilt at full opacity, so alpha never decays into subnormal
+    // floats and then to zero.
+    public double particleUpdateColor() {
+        if (particles[particles.length - 1].getColorAlpha() < 0.001F) resetParticles();
+        for (int i = 0; i < particles.length; i++) {
+            particles[i].updateColor(0.9);
+        }
+        return particles[particles.length - 1].getColorAlpha();
+    }
+
+    // Makes particle buffers use the named integration kernel
+    public void useKernel(String name) {
+        IntegrationKernel kernel = new ScalarKernel();
+        if (name.equals("vector")) kernel = IntegrationKernel.load();
+        if (!kernel.name().startsWith(name))
+            throw new IllegalStateException("no " + name + " kernel, got " + kernel.name());
+        ParticleBuffer.setKernel(kernel);
+    }
+
+    // Makes the particle buffer keep its particles in the named storage
+    public void useStorage(String name) {
+        if (name.equals("heap")) return; // setUp made it on the heap
+        ParticleArena arena = name.equals("offheap") ? ParticleArena.open() : null;
+        if (arena == null) throw new IllegalStateException("no " + name + " storage");
+        buffer = fill(arena.allocate(particleCount, new FireworkRandom(seed)));
+    }
+
+    // Moves the particle buffer by one time step
+    public double bufferStep() {
+        buffer.step();
+        return buffer.getPy(buffer.size() - 1);
+    }
+
+    // Fades the particle buffer by 0.9
+    public double bufferFade() {
+        buffer.fade(0.9);
+        return buffer.getColorAlpha(buffer.size() - 1);
+    }
+
+    // Calls Firework.prepareBurst() on every firework
+    public double prepareBurst() {
+        double sum = 0.0;
+        for (int i = 0; i < fireworks.length; i++) {
+            Firework fw = fireworks[i];
+            fw.prepareBurst();
+            sum += fw.getVy();
+        }
+        return sum;
+    }
+
+    // Calls Firework.moveParticles() on every firework
+    public double moveParticles() {
+        double sum = 0.0;
+        for (int i = 0; i < fireworks.length; i++) {
+            Firework fw = fireworks[i];
+            fw.moveParticles();
+            sum += fw.getVy();
+        }
+        return sum;
+    }
+
+    // Draws one gaussian number for every particle with the named method
+    public double gaussians(String method) {
+        if (method.equals("fill")) random.fillGaussian(gaussians, 0, gaussians.length, 1.0);
+        else if (method.equals("ziggurat"))
+            for (int i = 0; i < gaussians.length; i++) gaussians[i] = random.gaussian();
+        else if (method.equals("polar"))
+            for (int i = 0; i < gaussians.length; i++) gaussians[i] = random.gaussianPolar();
+        else throw new IllegalArgumentException("unknown method '" + method + "'");
+        return gaussians[gaussians.length - 1];
+    }
+
+    // Runs one frame of a grouped launch and burst. Once the group has faded
+    // it is rebuilt, so long runs keep measuring launches and bursts; the
+    // rebuild happens about once every hundred frames.
+    public double groupFrame() {
+        if (group.isEmpty()) newGroup();
+        engine.drawGroup(group);
+        engine.stepGroup(group);
+        return group.size() + fireworks[0].getColorAlpha();
+    }
+}
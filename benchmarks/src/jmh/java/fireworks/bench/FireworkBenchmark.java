@@ -0,0 +1,44 @@
+package fireworks.bench;
+
+/* Benchmarks Firework.prepareBurst() and Firework.moveParticles() for 100 to
+   1,000,000 particles split over groups of 1 to 100 fireworks. */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FireworkBenchmark {
+    @Param({ "100", "1000", "10000", "100000", "1000000" })
+    public int particles;
+
+    @Param({ "1", "7", "100" })
+    public int groupSize;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create();
+        workload.setUp(particles, groupSize, 126);
+    }
+
+    @Benchmark
+    public double prepareBurst() {
+        return workload.prepareBurst();
+    }
+
+    @Benchmark
+    public double moveParticles() {
+        return workload.moveParticles();
+    }
+}
@@ -0,0 +1,46 @@
+package fireworks.bench;
+
+/* Benchmarks ParticleBuffer.step() and fade() with the scalar and the vector
+   integration kernel, over the same 100 to 1,000,000 particles that
+   ParticleBenchmark moves as one Particle object each. */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KernelBenchmark {
+    @Param({ "100", "1000", "10000", "100000", "1000000" })
+    public int particles;
+
+    @Param({ "scalar", "vector" })
+    public String kernel;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create();
+        workload.setUp(particles, 1, 126);
+        workload.useKernel(kernel);
+    }
+
+    @Benchmark
+    public double step() {
+        return workload.bufferStep();
+    }
+
+    @Benchmark
+    public double fade() {
+        return workload.bufferFade();
+    }
+}
@@ -0,0 +1,48 @@
+package fireworks.bench;
+
+/* Benchmarks the per-object particle updates, Particle.updatePosition() and
+   Particle.updateColor(), over arrays of 100 to 1,000,000 particles. Every
+   iteration starts from the same particles at full opacity. */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParticleBenchmark {
+    @Param({ "100", "1000", "10000", "100000", "1000000" })
+    public int particles;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create();
+        workload.setUp(particles, 1, 126);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetParticles() {
+        workload.resetParticles();
+    }
+
+    @Benchmark
+    public double updatePosition() {
+        return workload.particleUpdatePosition();
+    }
+
+    @Benchmark
+    public double updateColor() {
+        return workload.particleUpdateColor();
+    }
+}
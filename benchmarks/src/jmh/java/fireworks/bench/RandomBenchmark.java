@@ -0,0 +1,41 @@
+package fireworks.bench;
+
+/* Benchmarks drawing one gaussian number per particle, the color variation
+   every particle gets on each fade, with the polar method that StdRandom uses
+   and with FireworkRandom's ziggurat, one call at a time and as one bulk
+   fill. */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RandomBenchmark {
+    @Param({ "100", "10000", "1000000" })
+    public int particles;
+
+    @Param({ "polar", "ziggurat", "fill" })
+    public String method;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create();
+        workload.setUp(particles, 1, 126);
+    }
+
+    @Benchmark
+    public double gaussians() {
+        return workload.gaussians(method);
+    }
+}
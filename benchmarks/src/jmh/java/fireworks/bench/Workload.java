@@ -0,0 +1,65 @@
+package fireworks.bench;
+
+/* The hot paths of the firework show that the benchmarks measure. The show's
+   classes live in the default package, which code in a named package (as JMH
+   requires for benchmarks) cannot refer to. The benchmarks therefore call
+   them through this interface, implemented by the default-package class
+   ShowWorkload and loaded by name. Each call returns a value that depends on
+   the work done so the JIT compiler cannot drop it. */
+
+public interface Workload {
+    // Builds the particles and fireworks for a run: the given number of
+    // particles in total, split evenly over groupSize fireworks
+    void setUp(int particles, int groupSize, long seed);
+
+    // Calls Particle.updatePosition() on every Particle object
+    double particleUpdatePosition();
+
+    // Calls Particle.updateColor(0.9) on every Particle object, rebuilding
+    // them at full opacity once they have faded below a thousandth
+    double particleUpdateColor();
+
+    // Rebuilds the Particle objects from the seed, at full opacity
+    void resetParticles();
+
+    // Calls Firework.prepareBurst() on every firework
+    double prepareBurst();
+
+    // Calls Firework.moveParticles() on every firework
+    double moveParticles();
+
+    // Makes particle buffers use the named integration kernel, "scalar" or
+    // "vector". Throws an IllegalStateException if it is not available.
+    void useKernel(String name);
+
+    // Makes the particle buffer keep its particles in the named storage,
+    // "heap" or "offheap" (an arena outside the heap). Throws an
+    // IllegalStateException if it is not available.
+    void useStorage(String name);
+
+    // Moves a particle buffer holding all the particles by one time step
+    double bufferStep();
+
+    // Fades a particle buffer holding all the particles by 0.9
+    double bufferFade();
+
+    // Draws one gaussian number for every particle with the named method:
+    // "polar" calls FireworkRandom.gaussianPolar() for each, "ziggurat" calls
+    // gaussian() for each, and "fill" fills them all with fillGaussian()
+    double gaussians(String method);
+
+    // Runs one frame of a grouped launch and burst: draws the group with a
+    // headless renderer and moves it by one time step
+    double groupFrame();
+
+    // Returns a new instance of the default-package implementation
+    static Workload create() {
+        try {
+            return (Workload) Class.forName("ShowWorkload")
+                                   .getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("ShowWorkload is not on the class path", e);
+        }
+    }
+}
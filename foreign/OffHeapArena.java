@@ -0,0 +1,98 @@
+/* This file makes ParticleArenas outside the Java heap with the incubating
+   Foreign Memory API. Each arena has its own shared resource scope, so its
+   buffers can be moved and faded by ParticleWorkers on any thread, and hands
+   out memory with an arena allocator: small buffers, such as the bursts of a
+   stage, are cut one after another from larger blocks, and large ones get a
+   block of their own. Closing the scope frees every block at once, which the
+   arena does when the last of its buffers is released. An arena that is
+   dropped before that, for example by a show stopped partway, is freed by a
+   Cleaner once the garbage collector finds it unreachable.
+
+   It lives in its own directory because it only compiles and runs with
+   --add-modules jdk.incubator.foreign; see ParticleArena. */
+
+import java.lang.ref.Cleaner;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import jdk.incubator.foreign.SegmentAllocator;
+
+public class OffHeapArena implements ParticleArena {
+    // frees arenas that become unreachable before they are freed
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final ResourceScope scope = ResourceScope.newSharedScope(cleaner);
+    private final SegmentAllocator allocator = SegmentAllocator.arenaAllocator(scope);
+    private int live; // buffers taken and not yet released
+    private long bytes; // bytes of particles taken
+
+    // Returns an empty buffer kept in the arena with room for the given number
+    // of particles
+    public synchronized ParticleBuffer allocate(int capacity, FireworkRandom random) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity must be non-negative");
+        if (!scope.isAlive()) throw new IllegalStateException("Particle arena was freed");
+        long size = (long) capacity * OffHeapColumns.PARTICLE_BYTES;
+        MemorySegment memory = allocator.allocate(Math.max(size, 8), 8);
+        live++;
+        bytes += size;
+        return new ParticleBuffer(new OffHeapColumns(this, memory, capacity), random);
+    }
+
+    // Hands a buffer back, freeing the whole arena with the last one
+    public synchronized void release(ParticleBuffer buffer) {
+        if (buffer.getArena() != this)
+            throw new IllegalArgumentException("Buffer was not taken from this arena");
+        if (!scope.isAlive()) throw new IllegalStateException("Particle arena was freed");
+        live--;
+        if (live == 0) scope.close();
+    }
+
+    // Returns true once the arena's memory has been freed
+    public synchronized boolean isFreed() {
+        return !scope.isAlive();
+    }
+
+    // Returns the number of bytes of particles the arena holds
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // a shell and the small bursts of its stage share one arena
+        OffHeapArena arena = new OffHeapArena();
+        ParticleBuffer shell = arena.allocate(500, new FireworkRandom(126));
+        ParticleBuffer stage = arena.allocate(120, new FireworkRandom(127));
+        StdOut.println("Bytes: " + arena.bytes()); // should print 44640
+
+        // the arena stays until its last buffer is released
+        arena.release(shell);
+        StdOut.println("Freed after the shell: " + arena.isFreed()); // should print false
+        arena.release(stage);
+        StdOut.println("Freed after the stage: " + arena.isFreed()); // should print true
+        try {
+            arena.allocate(10, new FireworkRandom(1));
+        }
+        catch (IllegalStateException e) {
+            StdOut.println("Allocate after free: " + e.getMessage());
+        }
+
+        // millions of particles in the air barely move the heap
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        OffHeapArena big = new OffHeapArena();
+        ParticleBuffer[] shells = new ParticleBuffer[200];
+        FireworkRandom random = new FireworkRandom(126);
+        for (int k = 0; k < shells.length; k++) {
+            shells[k] = big.allocate(10000, random.split());
+            for (int i = 0; i < 10000; i++) shells[k].add(0, -10, 0, 0.6, 0, -0.01, 0.05, 1, 1, 1);
+        }
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        StdOut.printf("2,000,000 particles: %.1f MB off the heap, heap grew %.1f MB%n",
+                      big.bytes() / 1e6, (heapAfter - heapBefore) / 1e6);
+        // should print 144.0 MB off the heap, and a heap growth well under 1 MB
+        for (ParticleBuffer buffer : shells) big.release(buffer);
+        StdOut.println("Freed: " + big.isFreed()); // should print true
+    }
+}
@@ -0,0 +1,169 @@
+/* This file keeps the columns of a ParticleBuffer outside the Java heap, in a
+   block of memory taken from an OffHeapArena. The block is cut into one
+   column per attribute, laid out like the arrays of HeapColumns. The buffer
+   does its arithmetic on arrays, so when a loop asks for a chunk of a column,
+   that chunk is copied into an array of the thread running the loop, and the
+   values the loop changed are copied back afterwards. Every loop, kernel, and
+   random stream of ParticleBuffer is then the same for both kinds of
+   columns, so a show looks exactly the same wherever its particles are kept.
+
+   The only heap memory the columns use is one chunk of each column per
+   thread, however many particles they hold.
+
+   It lives in its own directory because it only compiles and runs with
+   --add-modules jdk.incubator.foreign; see ParticleArena. */
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+public class OffHeapColumns implements ParticleColumns {
+    // bytes one particle takes: one double or float in every column
+    public static final int PARTICLE_BYTES = ParticleBuffer.DOUBLES * 8 + ParticleBuffer.FLOATS * 4;
+
+    // room for one chunk of every column, for each thread
+    private static final ThreadLocal<double[][]> doubleChunks =
+            ThreadLocal.withInitial(() -> new double[ParticleBuffer.DOUBLES][ParticleBuffer.CHUNK]);
+    private static final ThreadLocal<float[][]> floatChunks =
+            ThreadLocal.withInitial(() -> new float[ParticleBuffer.FLOATS][ParticleBuffer.CHUNK]);
+
+    private final ParticleArena arena; // arena the memory was taken from
+    private final MemorySegment[] doubles; // columns of doubles
+    private final MemorySegment[] floats; // columns of floats
+    private final int capacity; // number of particles the memory holds
+
+    // Creates columns for the given number of particles in the given memory,
+    // which must hold capacity times PARTICLE_BYTES bytes
+    OffHeapColumns(ParticleArena arena, MemorySegment memory, int capacity) {
+        if (memory.byteSize() < (long) capacity * PARTICLE_BYTES)
+            throw new IllegalArgumentException("Memory too small for " + capacity + " particles");
+        long doubleBytes = 8L * capacity; // bytes of one column of doubles
+        long floatBytes = 4L * capacity; // bytes of one column of floats
+        doubles = new MemorySegment[ParticleBuffer.DOUBLES];
+        for (int column = 0; column < doubles.length; column++)
+            doubles[column] = memory.asSlice(column * doubleBytes, doubleBytes);
+        floats = new MemorySegment[ParticleBuffer.FLOATS];
+        for (int column = 0; column < floats.length; column++)
+            floats[column] = memory.asSlice(doubles.length * doubleBytes + column * floatBytes,
+                                            floatBytes);
+        this.arena = arena;
+        this.capacity = capacity;
+    }
+
+    // Returns the number of particles the columns hold
+    public int capacity() {
+        return capacity;
+    }
+
+    // Returns the value of particle i in a column of doubles
+    public double getDouble(int column, int i) {
+        return MemoryAccess.getDoubleAtIndex(doubles[column], i);
+    }
+
+    // Sets the value of particle i in a column of doubles
+    public void setDouble(int column, int i, double value) {
+        MemoryAccess.setDoubleAtIndex(doubles[column], i, value);
+    }
+
+    // Returns the value of particle i in a column of floats
+    public float getFloat(int column, int i) {
+        return MemoryAccess.getFloatAtIndex(floats[column], i);
+    }
+
+    // Sets the value of particle i in a column of floats
+    public void setFloat(int column, int i, float value) {
+        MemoryAccess.setFloatAtIndex(floats[column], i, value);
+    }
+
+    // Returns this thread's array for the column, holding a copy of the
+    // particles from lo up to, but not including, hi from index 0
+    public double[] doubles(int column, int lo, int hi) {
+        double[] values = doubleChunks.get()[column];
+        MemorySegment.ofArray(values).copyFrom(doubles[column].asSlice(8L * lo, 8L * (hi - lo)));
+        return values;
+    }
+
+    // Returns this thread's array for the column, holding a copy of the
+    // particles from lo up to, but not including, hi from index 0
+    public float[] floats(int column, int lo, int hi) {
+        float[] values = floatChunks.get()[column];
+        MemorySegment.ofArray(values).copyFrom(floats[column].asSlice(4L * lo, 4L * (hi - lo)));
+        return values;
+    }
+
+    // Returns 0, since the arrays hold a chunk from its first particle
+    public int start(int lo) {
+        return 0;
+    }
+
+    // Copies the particles from lo up to, but not including, hi back into the
+    // column
+    public void putDoubles(int column, double[] values, int lo, int hi) {
+        doubles[column].asSlice(8L * lo, 8L * (hi - lo))
+                       .copyFrom(MemorySegment.ofArray(values).asSlice(0, 8L * (hi - lo)));
+    }
+
+    // Copies the particles from lo up to, but not including, hi back into the
+    // column
+    public void putFloats(int column, float[] values, int lo, int hi) {
+        floats[column].asSlice(4L * lo, 4L * (hi - lo))
+                      .copyFrom(MemorySegment.ofArray(values).asSlice(0, 4L * (hi - lo)));
+    }
+
+    // Returns the arena the columns are kept in
+    public ParticleArena getArena() {
+        return arena;
+    }
+
+    // Returns true if every particle of the two buffers is the same, bit for
+    // bit
+    private static boolean same(ParticleBuffer one, ParticleBuffer other) {
+        if (one.size() != other.size()) return false;
+        for (int i = 0; i < one.size(); i++) {
+            if (one.getPx(i) != other.getPx(i) || one.getPy(i) != other.getPy(i)
+                    || one.getVx(i) != other.getVx(i) || one.getVy(i) != other.getVy(i)
+                    || one.getRed(i) != other.getRed(i) || one.getGreen(i) != other.getGreen(i)
+                    || one.getBlue(i) != other.getBlue(i)
+                    || one.getColorAlpha(i) != other.getColorAlpha(i)) return false;
+        }
+        return true;
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        // a burst of several chunks, once on the heap and once off it
+        int n = 3 * ParticleBuffer.CHUNK + 100;
+        ParticleArena arena = new OffHeapArena();
+        ParticleBuffer heap = new ParticleBuffer(n, new FireworkRandom(126));
+        ParticleBuffer offHeap = arena.allocate(n, new FireworkRandom(126));
+        FireworkRandom random = new FireworkRandom(1);
+        for (int i = 0; i < n; i++) {
+            double vx = random.uniform(-0.3, 0.3), vy = random.uniform(-0.3, 0.3);
+            heap.add(0, 5, vx, vy, 0, -0.0098, 0.05, 1.0F, 0.5F, 0.0F);
+            offHeap.add(0, 5, vx, vy, 0, -0.0098, 0.05, 1.0F, 0.5F, 0.0F);
+        }
+
+        // the same steps, fades, culls, and jumps give the same particles,
+        // whether the chunks run on one thread or several
+        for (int threads = 1; threads <= 4; threads += 3) {
+            ParticleWorkers.setThreads(threads);
+            for (int step = 0; step < 20; step++) {
+                heap.step();
+                offHeap.step();
+                heap.fade(0.9);
+                offHeap.fade(0.9);
+                heap.cull(0.01F, 10);
+                offHeap.cull(0.01F, 10);
+            }
+        }
+        ParticleWorkers.setThreads(1);
+        heap.advance(5);
+        offHeap.advance(5);
+        heap.fade(0.9, 5);
+        offHeap.fade(0.9, 5);
+        StdOut.println("Particles left: " + offHeap.size());
+        StdOut.println("Same as the heap buffer: " + same(heap, offHeap)); // should print true
+        StdOut.println("Arena: " + arena.bytes() + " bytes"); // should print 891936 bytes
+        arena.release(offHeap);
+        StdOut.println("Freed with its last buffer: " + arena.isFreed()); // should print true
+    }
+}
@@ -0,0 +1,91 @@
+/* This file runs the particle loops of IntegrationKernel with the incubating
+   Java Vector API, moving as many particles per instruction as the machine's
+   widest vector registers hold, and finishes the elements left over one at a
+   time. Every element gets exactly the same additions and multiplications as
+   in ScalarKernel, so the results are identical.
+
+   It lives in its own directory because it only compiles and runs with
+   --add-modules jdk.incubator.vector. The Gradle build passes that flag;
+   IntegrationKernel.load falls back to ScalarKernel when the module is not
+   there, so everything else still compiles and runs without it. */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKernel implements IntegrationKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    // Adds each acceleration to its velocity and then each new velocity to
+    // its position, a vector of elements at a time
+    public void integrate(double[] p, double[] v, double[] a, int lo, int hi) {
+        int i = lo;
+        int bound = lo + DOUBLES.loopBound(hi - lo);
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector velocity = DoubleVector.fromArray(DOUBLES, v, i)
+                                                .add(DoubleVector.fromArray(DOUBLES, a, i));
+            velocity.intoArray(v, i);
+            DoubleVector.fromArray(DOUBLES, p, i).add(velocity).intoArray(p, i);
+        }
+        for (; i < hi; i++) {
+            v[i] += a[i];
+            p[i] += v[i];
+        }
+    }
+
+    // Multiplies every element by factor, a vector of elements at a time
+    public void scale(float[] values, float factor, int lo, int hi) {
+        int i = lo;
+        int bound = lo + FLOATS.loopBound(hi - lo);
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector.fromArray(FLOATS, values, i).mul(factor).intoArray(values, i);
+        }
+        for (; i < hi; i++) {
+            values[i] *= factor;
+        }
+    }
+
+    // Returns the name of the kernel with its vector width
+    public String name() {
+        return "vector (" + DOUBLES.length() + " doubles, " + FLOATS.length() + " floats)";
+    }
+
+    // main method to test
+    public static void main(String[] args) {
+        int n = 1000003; // not a multiple of any vector width
+        FireworkRandom random = new FireworkRandom(126);
+        double[][] scalar = new double[3][n];
+        for (int i = 0; i < n; i++) {
+            scalar[0][i] = random.uniform(-10, 10);
+            scalar[1][i] = random.uniform(-1, 1);
+            scalar[2][i] = random.uniform(-0.02, 0.02);
+        }
+        double[][] vector = { scalar[0].clone(), scalar[1].clone(), scalar[2].clone() };
+        float[] alphaScalar = new float[n];
+        java.util.Arrays.fill(alphaScalar, 1);
+        float[] alphaVector = alphaScalar.clone();
+
+        IntegrationKernel plain = new ScalarKernel();
+        IntegrationKernel wide = new VectorKernel();
+        StdOut.println("Kernel: " + wide.name());
+        for (int step = 0; step < 50; step++) {
+            plain.integrate(scalar[0], scalar[1], scalar[2], 0, n);
+            wide.integrate(vector[0], vector[1], vector[2], 0, n);
+            plain.scale(alphaScalar, 0.9F, 0, n);
+            wide.scale(alphaVector, 0.9F, 0, n);
+        }
+        StdOut.println("Identical: " + (java.util.Arrays.equals(scalar[0], vector[0])
+                && java.util.Arrays.equals(scalar[1], vector[1])
+                && java.util.Arrays.equals(alphaScalar, alphaVector))); // should print true
+
+        // time both kernels
+        for (IntegrationKernel kernel : new IntegrationKernel[] { plain, wide, plain, wide }) {
+            long start = System.nanoTime();
+            for (int step = 0; step < 100; step++)
+                kernel.integrate(scalar[0], scalar[1], scalar[2], 0, n);
+            StdOut.printf("%s: %.2f ms per step of %d particles%n", kernel.name(),
+                          (System.nanoTime() - start) / 1e8, n);
+        }
+    }
+}